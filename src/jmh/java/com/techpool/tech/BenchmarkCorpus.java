@@ -0,0 +1,234 @@
+package com.techpool.tech;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPageMar;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPageSz;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTSectPr;
+
+/**
+ * Synthetic benchmark inputs, generated during the build so no fixtures are checked in or
+ * downloaded. Files that already exist are kept, so repeated builds are cheap. Legacy DOC cannot
+ * be written with POI, so DOC benchmarks need a {@code sample.doc} dropped into the corpus.
+ */
+public final class BenchmarkCorpus {
+
+    // Directory the build generates into; benchmarks fall back to generating it themselves
+    public static final String DIRECTORY_PROPERTY = "thumbnail.bench.corpus";
+
+    static final List<String> IMAGE_FORMATS = List.of("jpg", "png", "tiff", "bmp");
+    static final List<String> IMAGE_SIZES = List.of("640x480", "1920x1080", "4000x3000");
+
+    private static final int SHEET_ROWS = 5000;
+    private static final String LOREM = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, "
+            + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. ";
+
+    private BenchmarkCorpus() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = ensure(Paths.get(args.length > 0 ? args[0] : "target/jmh-corpus"));
+        System.out.println("Benchmark corpus in " + dir.toAbsolutePath());
+    }
+
+    static Path directory() throws IOException {
+        return ensure(Paths.get(System.getProperty(DIRECTORY_PROPERTY, "target/jmh-corpus")));
+    }
+
+    static Path ensure(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (String size : IMAGE_SIZES) {
+            if (IMAGE_FORMATS.stream().allMatch(f -> Files.exists(dir.resolve(imageName(f, size))))) {
+                continue;
+            }
+            String[] wh = size.split("x");
+            BufferedImage image = photo(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+            for (String format : IMAGE_FORMATS) {
+                generate(dir.resolve(imageName(format, size)),
+                        out -> ImageIO.write(image, format, out));
+            }
+        }
+        generate(dir.resolve("sample.pdf"), BenchmarkCorpus::writePdf);
+        generate(dir.resolve("sample.docx"), BenchmarkCorpus::writeDocx);
+        generate(dir.resolve("sample.xlsx"), out -> writeSheet(new SXSSFWorkbook(100), out));
+        generate(dir.resolve("sample.xls"), out -> writeSheet(new HSSFWorkbook(), out));
+        generate(dir.resolve("sample.csv"), BenchmarkCorpus::writeCsv);
+        return dir;
+    }
+
+    static String imageName(String format, String size) {
+        return "image_" + size + "." + format;
+    }
+
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static void generate(Path file, Content content) throws IOException {
+        if (!Files.exists(file)) {
+            write(file, content);
+        }
+    }
+
+    // Through a temp file, so an interrupted build does not leave a truncated fixture behind
+    static void write(Path file, Content content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            content.writeTo(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Gradients, shapes and noise, so encoders see something closer to a photo than a flat fill
+    static BufferedImage photo(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setPaint(new GradientPaint(0, 0, new Color(30, 90, 160), width, height,
+                    new Color(230, 180, 60)));
+            g.fillRect(0, 0, width, height);
+            Random random = new Random(42);
+            for (int i = 0; i < 200; i++) {
+                g.setColor(new Color(random.nextInt(256), random.nextInt(256),
+                        random.nextInt(256), 120));
+                int size = Math.max(4, random.nextInt(Math.max(width, height) / 6));
+                g.fillOval(random.nextInt(width), random.nextInt(height), size, size);
+            }
+        } finally {
+            g.dispose();
+        }
+        Random random = new Random(7);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(17) - 8;
+                int rgb = row[x];
+                row[x] = (clamp(((rgb >> 16) & 0xff) + noise) << 16)
+                        | (clamp(((rgb >> 8) & 0xff) + noise) << 8) | clamp((rgb & 0xff) + noise);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static void writePdf(OutputStream out) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            BufferedImage picture = photo(800, 600);
+            for (int p = 0; p < 10; p++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.drawImage(LosslessFactory.createFromImage(document, picture), 72, 420,
+                            450, 338);
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(13);
+                    content.newLineAtOffset(72, 400);
+                    for (int line = 0; line < 25; line++) {
+                        content.showText("Page " + (p + 1) + ", line " + (line + 1) + ": "
+                                + LOREM.substring(0, 70));
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(out);
+        }
+    }
+
+    private static void writeDocx(OutputStream out) throws IOException {
+        try (XWPFDocument document = new XWPFDocument()) {
+            // Word always writes a styles part and a page setup; the converter requires both
+            document.createStyles();
+            CTSectPr section = document.getDocument().getBody().addNewSectPr();
+            CTPageSz page = section.addNewPgSz();
+            page.setW(BigInteger.valueOf(11906));
+            page.setH(BigInteger.valueOf(16838));
+            CTPageMar margins = section.addNewPgMar();
+            margins.setTop(BigInteger.valueOf(1440));
+            margins.setBottom(BigInteger.valueOf(1440));
+            margins.setLeft(BigInteger.valueOf(1440));
+            margins.setRight(BigInteger.valueOf(1440));
+            XWPFRun title = document.createParagraph().createRun();
+            title.setBold(true);
+            title.setFontSize(18);
+            title.setText("Quarterly report");
+            for (int i = 0; i < 300; i++) {
+                XWPFParagraph paragraph = document.createParagraph();
+                XWPFRun run = paragraph.createRun();
+                run.setBold(i % 7 == 0);
+                run.setText((i + 1) + ". " + LOREM + LOREM);
+            }
+            document.write(out);
+        }
+    }
+
+    private static void writeSheet(Workbook workbook, OutputStream out) throws IOException {
+        try (workbook) {
+            Sheet sheet = workbook.createSheet("Data");
+            Row header = sheet.createRow(0);
+            String[] columns = { "Id", "Name", "Region", "Amount", "Date" };
+            for (int c = 0; c < columns.length; c++) {
+                header.createCell(c).setCellValue(columns[c]);
+            }
+            for (int r = 1; r <= SHEET_ROWS; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(r);
+                row.createCell(1).setCellValue("Customer " + r);
+                row.createCell(2).setCellValue("Region " + (r % 12));
+                row.createCell(3).setCellValue(r * 13.37);
+                row.createCell(4).setCellValue("2024-01-" + (1 + r % 28));
+            }
+            workbook.write(out);
+            if (workbook instanceof SXSSFWorkbook streaming) {
+                streaming.dispose();
+            }
+        }
+    }
+
+    private static void writeCsv(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write("Id,Name,Region,Amount,Date\n");
+        for (int r = 1; r <= SHEET_ROWS * 4; r++) {
+            writer.write(r + ",Customer " + r + ",Region " + (r % 12) + "," + (r * 13.37)
+                    + ",2024-01-" + (1 + r % 28) + "\n");
+        }
+        writer.flush();
+    }
+}
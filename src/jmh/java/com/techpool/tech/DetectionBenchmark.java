@@ -0,0 +1,54 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Content type detection from a file's header, covering the magic-number fast path and the Tika
+ * fallback (CSV).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DetectionBenchmark {
+
+    @Param({ "jpg", "png", "tiff", "bmp", "pdf", "docx", "xlsx", "xls", "csv" })
+    private String format;
+
+    private final ContentTypeDetector contentTypeDetector = new ContentTypeDetector();
+    private String name;
+    private ByteBuffer header;
+
+    @Setup
+    public void load() throws IOException {
+        Path corpus = BenchmarkCorpus.directory();
+        name = BenchmarkCorpus.IMAGE_FORMATS.contains(format)
+                ? BenchmarkCorpus.imageName(format, BenchmarkCorpus.IMAGE_SIZES.get(0))
+                : "sample." + format;
+        byte[] bytes = Files.readAllBytes(corpus.resolve(name));
+        header = ByteBuffer.wrap(Arrays.copyOf(bytes, Math.min(bytes.length, 8192)));
+    }
+
+    @Benchmark
+    public String detect() {
+        return contentTypeDetector.detect(header.duplicate(), name);
+    }
+}
@@ -0,0 +1,48 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Document previews: PDF first page, DOCX first page and the spreadsheet data previews. DOC is
+ * not in the default set because POI cannot write one; drop a {@code sample.doc} into the corpus
+ * and run with {@code -p format=doc}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentBenchmark {
+
+    @Param({ "pdf", "docx", "xlsx", "xls", "csv" })
+    private String format;
+
+    private String name;
+    private byte[] data;
+
+    @Setup
+    public void load(ThumbnailBenchmarkState state) throws IOException {
+        name = "sample." + format;
+        data = state.read(name);
+    }
+
+    @Benchmark
+    public ThumbnailService.EncodedThumbnail preview(ThumbnailBenchmarkState state)
+            throws InterruptedException, ExecutionException {
+        return state.render(name, data);
+    }
+}
@@ -0,0 +1,49 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Image decode, resize and encode to the default rendition, per format and source resolution.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageBenchmark {
+
+    @Param({ "jpg", "png", "tiff", "bmp" })
+    private String format;
+
+    @Param({ "640x480", "1920x1080", "4000x3000" })
+    private String size;
+
+    private String name;
+    private byte[] data;
+
+    @Setup
+    public void load(ThumbnailBenchmarkState state) throws IOException {
+        name = BenchmarkCorpus.imageName(format, size);
+        data = state.read(name);
+    }
+
+    @Benchmark
+    public ThumbnailService.EncodedThumbnail thumbnail(ThumbnailBenchmarkState state)
+            throws InterruptedException, ExecutionException {
+        return state.render(name, data);
+    }
+}
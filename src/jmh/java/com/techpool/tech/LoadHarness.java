@@ -0,0 +1,494 @@
+package com.techpool.tech;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * End-to-end load run against the real service. Generates a directory tree of mixed files,
+ * starts the application on a random port and drives it in two phases: the whole tree through
+ * {@link ThumbnailService#processPath}, then every file as a concurrent
+ * {@code POST /api/thumbnail/render} request. Throughput, per-type latency percentiles, peak
+ * heap and GC pauses of each phase are written as JSON, so runs can be diffed.
+ *
+ * <pre>
+ * mvn -Pbenchmarks process-test-classes exec:exec@load -Dload.args="--files 1000"
+ * </pre>
+ *
+ * Options: {@code --files}, {@code --seed}, {@code --concurrency}, {@code --phases}
+ * (directory,http), {@code --tree} and {@code --out}. The tree is reused while the file count
+ * and seed stay the same.
+ */
+public final class LoadHarness {
+
+    // Widths paired with 4:3 heights, from icon-sized up to a 12 MP photo
+    private static final int[] IMAGE_WIDTHS = { 320, 800, 1280, 1920, 2560, 4000 };
+    private static final int DIRECTORY_FANOUT = 8;
+
+    private final Map<String, String> options;
+    private final Path tree;
+    // Detected content type of every file in the tree, by absolute path
+    private final Map<String, String> types = new HashMap<>();
+
+    private LoadHarness(Map<String, String> options) {
+        this.options = options;
+        this.tree = Paths.get(options.getOrDefault("tree", "target/load-tree"))
+                .toAbsolutePath().normalize();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        // Devtools restarts an application launched from main; it reads this before the context
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        new LoadHarness(options).run();
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    private void run() throws Exception {
+        int files = intOption("files", 400);
+        int seed = intOption("seed", 42);
+        int concurrency = intOption("concurrency", Runtime.getRuntime().availableProcessors());
+        List<String> phases =
+                List.of(options.getOrDefault("phases", "directory,http").split(","));
+        Path out = Paths.get(options.getOrDefault("out", "target/load-result.json"));
+
+        generateTree(files, seed);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                TechApplication.class)
+                .logStartupInfo(false)
+                .properties("server.port=0",
+                        // Every run generates everything; a warm manifest would skip it all
+                        "thumbnail.manifest.enabled=false",
+                        "logging.level.root=WARN")
+                .run();
+        Map<String, Object> report = new LinkedHashMap<>();
+        try {
+            ContentTypeDetector detector = context.getBean(ContentTypeDetector.class);
+            for (Path file : treeFiles()) {
+                try (ThumbnailSource source = detector.open(file.toFile())) {
+                    types.put(file.toString(), source.contentType());
+                }
+            }
+            report.put("timestamp", Instant.now().toString());
+            report.put("environment", environment(files, seed, concurrency));
+            report.put("corpus", countByType());
+            Map<String, Object> results = new LinkedHashMap<>();
+            GcMonitor gc = new GcMonitor();
+            if (phases.contains("directory")) {
+                results.put("directory", directoryPhase(context.getBean(ThumbnailService.class),
+                        gc));
+            }
+            if (phases.contains("http")) {
+                int port = Integer.parseInt(context.getEnvironment()
+                        .getRequiredProperty("local.server.port"));
+                results.put("http", httpPhase(port, concurrency, gc));
+            }
+            report.put("phases", results);
+            gc.close();
+        } finally {
+            context.close();
+        }
+
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(out.toFile(), report);
+        System.out.println("Load results in " + out.toAbsolutePath());
+    }
+
+    // Phase 1: the tree as one directory job, as POST /generate runs it
+    private Map<String, Object> directoryPhase(ThumbnailService thumbnailService, GcMonitor gc)
+            throws IOException, InterruptedException {
+        deleteThumbnails();
+        Map<String, List<Double>> latencies = new TreeMap<>();
+        Map<String, Integer> statuses = new TreeMap<>();
+
+        gc.reset();
+        long start = System.nanoTime();
+        ThumbnailJob job = new ThumbnailJob(tree.toString());
+        thumbnailService.processPath(tree.toFile(), job);
+        long elapsed = System.nanoTime() - start;
+        GcMonitor.Snapshot memory = gc.snapshot();
+
+        for (ThumbnailJob.FileResult result : job.getResults(0, Integer.MAX_VALUE)) {
+            statuses.merge(result.status().name().toLowerCase(Locale.ROOT), 1, Integer::sum);
+            latencies.computeIfAbsent(typeOf(result.path()), t -> new ArrayList<>())
+                    .add((double) result.durationMs());
+        }
+        return phaseReport(elapsed, statuses, latencies, memory);
+    }
+
+    // Phase 2: one upload per file, with a fixed number of requests in flight
+    private Map<String, Object> httpPhase(int port, int concurrency, GcMonitor gc)
+            throws InterruptedException, IOException {
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(concurrency))
+                .build();
+        Map<String, List<Double>> latencies = new ConcurrentHashMap<>();
+        Map<String, Integer> statuses = new ConcurrentHashMap<>();
+        List<Path> files = treeFiles();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+
+        gc.reset();
+        long start = System.nanoTime();
+        for (Path file : files) {
+            clients.execute(() -> {
+                String status;
+                long requestStart = System.nanoTime();
+                try {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(
+                            "http://localhost:" + port + "/api/thumbnail/render?name="
+                                    + URLEncoder.encode(file.getFileName().toString(),
+                                            StandardCharsets.UTF_8)))
+                            .header("Content-Type", "application/octet-stream")
+                            .timeout(Duration.ofMinutes(2))
+                            .POST(HttpRequest.BodyPublishers.ofFile(file))
+                            .build();
+                    HttpResponse<Void> response = client.send(request,
+                            HttpResponse.BodyHandlers.discarding());
+                    status = String.valueOf(response.statusCode());
+                } catch (IOException e) {
+                    status = "error";
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                double millis = (System.nanoTime() - requestStart) / 1_000_000.0;
+                statuses.merge(status, 1, Integer::sum);
+                if (status.equals("200")) {
+                    latencies.computeIfAbsent(typeOf(file.toString()),
+                            t -> Collections.synchronizedList(new ArrayList<>())).add(millis);
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - start;
+        GcMonitor.Snapshot memory = gc.snapshot();
+        client.executor().ifPresent(e -> ((ExecutorService) e).shutdown());
+
+        Map<String, Object> report = phaseReport(elapsed, new TreeMap<>(statuses),
+                new TreeMap<>(latencies), memory);
+        report.put("concurrency", concurrency);
+        return report;
+    }
+
+    private Map<String, Object> phaseReport(long elapsedNanos, Map<String, Integer> statuses,
+            Map<String, List<Double>> latencies, GcMonitor.Snapshot memory) {
+        int count = statuses.values().stream().mapToInt(Integer::intValue).sum();
+        double seconds = elapsedNanos / 1e9;
+        List<Double> all = latencies.values().stream().flatMap(List::stream)
+                .collect(Collectors.toList());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("files", count);
+        report.put("elapsedMs", Math.round(elapsedNanos / 1e6));
+        report.put("filesPerSecond", round(count / seconds));
+        report.put("statuses", statuses);
+        Map<String, Object> byType = new LinkedHashMap<>();
+        byType.put("all", percentiles(all));
+        latencies.forEach((type, values) -> byType.put(type, percentiles(values)));
+        report.put("latencyMs", byType);
+        report.put("peakHeapBytes", memory.peakHeapBytes());
+        report.put("gcPauses", memory.pauses());
+        report.put("gcPauseMs", memory.pauseMillis());
+        report.put("gcMaxPauseMs", memory.maxPauseMillis());
+        return report;
+    }
+
+    private static Map<String, Object> percentiles(List<Double> values) {
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", sorted.size());
+        if (!sorted.isEmpty()) {
+            result.put("p50", round(rank(sorted, 0.50)));
+            result.put("p95", round(rank(sorted, 0.95)));
+            result.put("p99", round(rank(sorted, 0.99)));
+            result.put("max", round(sorted.get(sorted.size() - 1)));
+        }
+        return result;
+    }
+
+    // Nearest-rank percentile
+    private static double rank(List<Double> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private String typeOf(String path) {
+        return types.getOrDefault(path, ContentTypeDetector.DEFAULT_TYPE);
+    }
+
+    private Map<String, Integer> countByType() {
+        Map<String, Integer> counts = new TreeMap<>();
+        types.values().forEach(type -> counts.merge(type, 1, Integer::sum));
+        return counts;
+    }
+
+    private Map<String, Object> environment(int files, int seed, int concurrency) {
+        Map<String, Object> env = new LinkedHashMap<>();
+        env.put("javaVersion", System.getProperty("java.version"));
+        env.put("processors", Runtime.getRuntime().availableProcessors());
+        env.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        env.put("garbageCollectors", ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .map(GarbageCollectorMXBean::getName).collect(Collectors.toList()));
+        env.put("files", files);
+        env.put("seed", seed);
+        env.put("concurrency", concurrency);
+        env.put("tree", tree.toString());
+        return env;
+    }
+
+    private List<Path> treeFiles() throws IOException {
+        try (Stream<Path> walk = Files.walk(tree)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(p -> !ThumbnailService.isThumbnailName(p.getFileName().toString()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Thumbnails from an earlier run; processPath would overwrite them anyway, but not the sizes
+    private void deleteThumbnails() throws IOException {
+        try (Stream<Path> walk = Files.walk(tree)) {
+            for (Path file : walk.filter(Files::isRegularFile)
+                    .filter(p -> ThumbnailService.isThumbnailName(p.getFileName().toString()))
+                    .collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Mixed tree of {@code files} files spread over nested directories. Images get random sizes
+     * and formats; documents are copies of the benchmark corpus, and short clips are added when
+     * ffmpeg is on the path.
+     */
+    private void generateTree(int files, int seed) throws IOException, InterruptedException {
+        String spec = "files=" + files + ",seed=" + seed;
+        // Kept beside the tree, where the directory phase does not pick it up
+        Path marker = tree.resolveSibling(tree.getFileName() + ".spec");
+        if (Files.exists(marker) && Files.readString(marker).equals(spec)) {
+            return;
+        }
+        if (Files.exists(tree)) {
+            try (Stream<Path> walk = Files.walk(tree)) {
+                for (Path path : walk.sorted(Collections.reverseOrder())
+                        .collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Path corpus = BenchmarkCorpus.directory();
+        List<Path> videos = generateVideos(corpus);
+        // Weighted towards images, as photo libraries are; documents make up the rest
+        List<String> mix = new ArrayList<>();
+        Collections.addAll(mix, "image", "image", "image", "image", "image", "image",
+                "sample.pdf", "sample.docx", "sample.xlsx", "sample.xls", "sample.csv");
+        if (!videos.isEmpty()) {
+            mix.add("video");
+        }
+
+        Random random = new Random(seed);
+        Map<Integer, BufferedImage> photos = new HashMap<>();
+        for (int i = 0; i < files; i++) {
+            Path dir = tree.resolve("d" + random.nextInt(DIRECTORY_FANOUT));
+            if (random.nextBoolean()) {
+                dir = dir.resolve("d" + random.nextInt(DIRECTORY_FANOUT));
+            }
+            Files.createDirectories(dir);
+            String kind = mix.get(random.nextInt(mix.size()));
+            if (kind.equals("image")) {
+                int width = IMAGE_WIDTHS[random.nextInt(IMAGE_WIDTHS.length)];
+                String format = BenchmarkCorpus.IMAGE_FORMATS.get(
+                        random.nextInt(BenchmarkCorpus.IMAGE_FORMATS.size()));
+                BufferedImage photo = photos.computeIfAbsent(width,
+                        w -> BenchmarkCorpus.photo(w, w * 3 / 4));
+                BenchmarkCorpus.write(dir.resolve(String.format("file%05d.%s", i, format)),
+                        out -> ImageIO.write(photo, format, out));
+            } else {
+                Path source = kind.equals("video") ? videos.get(random.nextInt(videos.size()))
+                        : corpus.resolve(kind);
+                String name = source.getFileName().toString();
+                Files.copy(source, dir.resolve(String.format("file%05d%s", i,
+                        name.substring(name.lastIndexOf('.')))),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.writeString(marker, spec);
+    }
+
+    // Short test-pattern clips; none when ffmpeg is not installed
+    private static List<Path> generateVideos(Path corpus) throws IOException, InterruptedException {
+        List<Path> videos = new ArrayList<>();
+        for (String size : List.of("640x360", "1280x720")) {
+            Path clip = corpus.resolve("clip_" + size + ".mp4");
+            if (!Files.exists(clip)) {
+                Path tmp = corpus.resolve("clip_" + size + ".tmp.mp4");
+                Process process;
+                try {
+                    process = new ProcessBuilder("ffmpeg", "-v", "error", "-y", "-f", "lavfi",
+                            "-i", "testsrc2=duration=6:size=" + size + ":rate=25",
+                            "-pix_fmt", "yuv420p", tmp.toString())
+                            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                            .redirectError(ProcessBuilder.Redirect.DISCARD)
+                            .start();
+                } catch (IOException e) {
+                    System.out.println("ffmpeg not found, the load tree has no videos");
+                    return videos;
+                }
+                if (process.waitFor() != 0) {
+                    Files.deleteIfExists(tmp);
+                    System.out.println("ffmpeg failed, the load tree has no videos");
+                    return videos;
+                }
+                Files.move(tmp, clip, StandardCopyOption.REPLACE_EXISTING);
+            }
+            videos.add(clip);
+        }
+        return videos;
+    }
+
+    /**
+     * Heap and GC figures for one phase. Heap use is sampled, so the peak is approximate; GC
+     * pauses come from the collectors' notifications. Concurrent cycles are left out, since they
+     * do not stop the application.
+     */
+    private static final class GcMonitor implements NotificationListener {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peakHeap = new AtomicLong();
+        private final AtomicLong pauses = new AtomicLong();
+        private final AtomicLong pauseMillis = new AtomicLong();
+        private final AtomicLong maxPauseMillis = new AtomicLong();
+        private final Thread sampler;
+        private volatile boolean running = true;
+
+        record Snapshot(long peakHeapBytes, long pauses, long pauseMillis, long maxPauseMillis) {
+        }
+
+        GcMonitor() {
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (bean instanceof NotificationEmitter emitter) {
+                    emitter.addNotificationListener(this, null, null);
+                }
+            }
+            sampler = new Thread(() -> {
+                while (running) {
+                    peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "load-heap-sampler");
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(
+                    GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                    .from((CompositeData) notification.getUserData());
+            String name = info.getGcName();
+            if (name.contains("Cycles") || name.contains("Concurrent")) {
+                return;
+            }
+            long duration = info.getGcInfo().getDuration();
+            pauses.incrementAndGet();
+            pauseMillis.addAndGet(duration);
+            maxPauseMillis.accumulateAndGet(duration, Math::max);
+        }
+
+        // Starts the phase from a collected heap; the collection's own notification is given
+        // a moment to arrive so it is not counted
+        void reset() throws InterruptedException {
+            System.gc();
+            Thread.sleep(200);
+            peakHeap.set(memory.getHeapMemoryUsage().getUsed());
+            pauses.set(0);
+            pauseMillis.set(0);
+            maxPauseMillis.set(0);
+        }
+
+        Snapshot snapshot() {
+            peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            return new Snapshot(peakHeap.get(), pauses.get(), pauseMillis.get(),
+                    maxPauseMillis.get());
+        }
+
+        void close() {
+            running = false;
+            sampler.interrupt();
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (bean instanceof NotificationEmitter emitter) {
+                    try {
+                        emitter.removeNotificationListener(this);
+                    } catch (ListenerNotFoundException e) {
+                        // Never registered
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.techpool.tech;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Text-based previews at the default canvas size, with enough text to overflow it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextPreviewBenchmark {
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 600;
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog. ".repeat(400);
+    private static final List<String> ROWS = List.of("Id, Name, Region, Amount, Date",
+            "1, Customer 1, Region 1, 13.37, 2024-01-02",
+            "2, Customer 2, Region 2, 26.74, 2024-01-03",
+            "3, Customer 3, Region 3, 40.11, 2024-01-04");
+
+    @Param({ "text", "document", "data", "placeholder" })
+    private String kind;
+
+    private final TextPreviewRenderer renderer = new TextPreviewRenderer();
+
+    @Benchmark
+    public BufferedImage render() {
+        return switch (kind) {
+            case "text" -> renderer.renderText(TEXT, WIDTH, HEIGHT);
+            case "document" -> renderer.renderDocument("DOC Preview", TEXT, WIDTH, HEIGHT);
+            case "data" -> renderer.renderData("sample.csv", ROWS, WIDTH, HEIGHT);
+            default -> renderer.renderPlaceholder("archive.bin", WIDTH, HEIGHT);
+        };
+    }
+}
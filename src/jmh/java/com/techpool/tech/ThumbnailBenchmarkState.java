@@ -0,0 +1,63 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * The application context without the web server, shared by the generator benchmarks. Sources
+ * are rendered from memory through {@link ThumbnailService#render}, the same path as uploads, so
+ * disk reads and thumbnail writes do not blur the numbers.
+ */
+@State(Scope.Benchmark)
+public class ThumbnailBenchmarkState {
+    private ConfigurableApplicationContext context;
+    private ThumbnailService thumbnailService;
+    private ContentTypeDetector contentTypeDetector;
+    private ThumbnailRendition rendition;
+    private Path corpus;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        corpus = BenchmarkCorpus.directory();
+        context = new SpringApplicationBuilder(TechApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("thumbnail.manifest.enabled=false",
+                        "spring.devtools.restart.enabled=false",
+                        "logging.level.root=WARN")
+                .run();
+        thumbnailService = context.getBean(ThumbnailService.class);
+        contentTypeDetector = context.getBean(ContentTypeDetector.class);
+        rendition = thumbnailService.getRenditions().get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    byte[] read(String name) throws IOException {
+        Path file = corpus.resolve(name);
+        if (!Files.exists(file)) {
+            throw new IllegalStateException("Missing benchmark input " + file);
+        }
+        return Files.readAllBytes(file);
+    }
+
+    ThumbnailService.EncodedThumbnail render(String name, byte[] data)
+            throws InterruptedException, ExecutionException {
+        return thumbnailService.render(contentTypeDetector.open(name, ByteBuffer.wrap(data)),
+                rendition).get();
+    }
+}
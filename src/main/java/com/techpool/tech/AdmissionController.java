@@ -0,0 +1,119 @@
+package com.techpool.tech;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Keeps the combined working set of running thumbnail jobs within a heap budget. Each job
+ * acquires its estimated decode cost, in KiB, from one weighted semaphore before the handler
+ * runs, so a few huge images wait for each other instead of running the JVM out of memory
+ * together. A job estimated above the per-job cap is admitted at the cap when its handler can
+ * work at reduced resolution, and turned away otherwise.
+ */
+@Component
+public class AdmissionController {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    private static final long KIB = 1024;
+
+    /**
+     * Estimated peak heap of one job: {@code bytes} at full quality, and the least it can be
+     * done in at reduced resolution. Both are equal when the handler cannot reduce.
+     */
+    public record Estimate(long bytes, long minimumBytes) {
+
+        public static Estimate fixed(long bytes) {
+            return new Estimate(bytes, bytes);
+        }
+
+        public static Estimate reducible(long bytes, long minimumBytes) {
+            return new Estimate(bytes, Math.min(bytes, minimumBytes));
+        }
+    }
+
+    // Heap shared by running jobs; 0 uses half of the maximum heap
+    @Value("${thumbnail.admission.budget-mb:0}")
+    private long budgetMb;
+
+    // Largest share one job may take; 0 uses half of the budget, so two large jobs can overlap
+    @Value("${thumbnail.admission.max-job-mb:0}")
+    private long maxJobMb;
+
+    private long budgetBytes;
+    private long maxJobBytes;
+    // Fair, so a large job is not starved by a stream of small ones
+    private Semaphore permits;
+
+    @PostConstruct
+    public void init() {
+        budgetBytes = budgetMb > 0 ? budgetMb * KIB * KIB : Runtime.getRuntime().maxMemory() / 2;
+        maxJobBytes = Math.min(budgetBytes,
+                maxJobMb > 0 ? maxJobMb * KIB * KIB : budgetBytes / 2);
+        permits = new Semaphore(toKib(budgetBytes), true);
+        logger.info("Thumbnail memory budget {} MB, at most {} MB per job",
+                budgetBytes / KIB / KIB, maxJobBytes / KIB / KIB);
+    }
+
+    /**
+     * Blocks until the job's share of the budget is free. Returns null when even the reduced
+     * form of the job does not fit under the per-job cap.
+     */
+    public Permit admit(Estimate estimate) throws InterruptedException {
+        if (estimate.minimumBytes() > maxJobBytes) {
+            return null;
+        }
+        long bytes = Math.min(estimate.bytes(), maxJobBytes);
+        int kib = toKib(bytes);
+        permits.acquire(kib);
+        return new Permit(kib, bytes, bytes < estimate.bytes());
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getAvailableBytes() {
+        return permits.availablePermits() * KIB;
+    }
+
+    private static int toKib(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (bytes + KIB - 1) / KIB));
+    }
+
+    /**
+     * A job's share of the budget, returned on close. {@code reduced} is set when the job was
+     * admitted with less than its full-quality estimate.
+     */
+    public final class Permit implements AutoCloseable {
+        private final int kib;
+        private final long bytes;
+        private final boolean reduced;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int kib, long bytes, boolean reduced) {
+            this.kib = kib;
+            this.bytes = bytes;
+            this.reduced = reduced;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        public boolean reduced() {
+            return reduced;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                permits.release(kib);
+            }
+        }
+    }
+}
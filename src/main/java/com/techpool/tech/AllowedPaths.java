@@ -0,0 +1,66 @@
+package com.techpool.tech;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * The directories clients may name in requests. Paths are canonicalized before the check, so
+ * {@code ..} segments and symbolic links cannot lead outside a root.
+ */
+@Component
+public class AllowedPaths {
+    private static final Logger logger = LoggerFactory.getLogger(AllowedPaths.class);
+
+    // Comma-separated roots; empty allows any path the service can read
+    @Value("${thumbnail.allowed-base-path:}")
+    private String allowedSpec;
+
+    private final List<Path> roots = new ArrayList<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        for (String root : allowedSpec.split(",")) {
+            if (!root.isBlank()) {
+                roots.add(new File(root.trim()).getCanonicalFile().toPath());
+            }
+        }
+        if (roots.isEmpty()) {
+            logger.warn("thumbnail.allowed-base-path is empty; requests may name any path");
+        } else {
+            logger.info("Requests are limited to {}", roots);
+        }
+    }
+
+    /**
+     * Canonical form of a path from a request.
+     *
+     * @throws SecurityException if it lies outside every allowed root
+     */
+    public File resolve(String path) throws IOException {
+        File file = new File(path).getCanonicalFile();
+        if (!isAllowed(file.toPath())) {
+            throw new SecurityException("Path is outside the allowed directories: " + path);
+        }
+        return file;
+    }
+
+    private boolean isAllowed(Path path) {
+        if (roots.isEmpty()) {
+            return true;
+        }
+        for (Path root : roots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
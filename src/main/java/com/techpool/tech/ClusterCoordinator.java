@@ -0,0 +1,202 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Shares directory processing between instances working on the same tree. Each directory's files
+ * are split into fixed batches, and an instance renders a batch only while it holds the lease on
+ * it. An instance claims only a few batches ahead of its workers, leaving the rest to others.
+ * Leases are renewed on a heartbeat, so the batches of a crashed instance expire and are taken
+ * over by whoever is still waiting for them.
+ */
+@Component
+public class ClusterCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterCoordinator.class);
+
+    @Value("${thumbnail.cluster.enabled:false}")
+    private boolean enabled;
+
+    // Shared directory for lease files; empty keeps leases in this instance only
+    @Value("${thumbnail.cluster.lease-directory:}")
+    private String leaseDirectory;
+
+    // Defaults to host name and process id
+    @Value("${thumbnail.cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${thumbnail.cluster.lease-ttl-seconds:60}")
+    private long leaseTtlSeconds;
+
+    @Value("${thumbnail.cluster.heartbeat-seconds:10}")
+    private long heartbeatSeconds;
+
+    // Files per work unit; smaller units spread a large directory over more instances
+    @Value("${thumbnail.cluster.batch-size:200}")
+    private int batchSize;
+
+    // Units this instance holds at once; enough to keep its workers busy, no more
+    @Value("${thumbnail.cluster.max-units:4}")
+    private int maxUnits;
+
+    // How often a job retries units another instance holds
+    @Value("${thumbnail.cluster.retry-ms:2000}")
+    private long retryMs;
+
+    @Autowired
+    private ThumbnailMetrics metrics;
+
+    private LeaseStore store;
+    private final Set<Lease> held = ConcurrentHashMap.newKeySet();
+    private Semaphore unitSlots;
+    private ScheduledExecutorService heartbeat;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (nodeId.isBlank()) {
+            nodeId = InetAddress.getLocalHost().getHostName() + "-"
+                    + ProcessHandle.current().pid();
+        }
+        unitSlots = new Semaphore(Math.max(1, maxUnits));
+        store = leaseDirectory.isBlank() ? new InMemoryLeaseStore()
+                : new DirectoryLeaseStore(Paths.get(leaseDirectory));
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "thumbnail-lease-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleAtFixedRate(this::renewAll, heartbeatSeconds, heartbeatSeconds,
+                TimeUnit.SECONDS);
+        logger.info("Cluster mode as {}, leases in {}", nodeId,
+                leaseDirectory.isBlank() ? "memory" : leaseDirectory);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        for (Lease lease : held) {
+            lease.release();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getBatchSize() {
+        return Math.max(1, batchSize);
+    }
+
+    public long getRetryMillis() {
+        return retryMs;
+    }
+
+    /**
+     * Claims a work unit, or returns null while another instance holds it. Waits first while this
+     * instance already holds as many units as it may.
+     */
+    public Lease tryClaim(String unit) throws IOException, InterruptedException {
+        unitSlots.acquire();
+        boolean acquired = false;
+        try {
+            acquired = store.tryAcquire(unit, nodeId,
+                    TimeUnit.SECONDS.toMillis(leaseTtlSeconds));
+        } finally {
+            if (!acquired) {
+                unitSlots.release();
+            }
+        }
+        if (!acquired) {
+            metrics.recordLease("contended");
+            return null;
+        }
+        metrics.recordLease("claimed");
+        Lease lease = new Lease(unit);
+        held.add(lease);
+        return lease;
+    }
+
+    private void renewAll() {
+        for (Lease lease : held) {
+            try {
+                if (!store.renew(lease.unit, nodeId,
+                        TimeUnit.SECONDS.toMillis(leaseTtlSeconds))) {
+                    logger.warn("Lost lease on {} to another instance", lease.unit);
+                    metrics.recordLease("lost");
+                    lease.lost = true;
+                    held.remove(lease);
+                }
+            } catch (IOException e) {
+                // Retried on the next beat; the lease only goes once its TTL passes
+                logger.warn("Failed to renew lease on {}", lease.unit, e);
+            }
+        }
+    }
+
+    /**
+     * A claimed work unit. Each file task retains it, and it is released once the claimer and
+     * every task have closed it.
+     */
+    public final class Lease implements AutoCloseable {
+        private final String unit;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean lost;
+
+        private Lease(String unit) {
+            this.unit = unit;
+        }
+
+        public void retain() {
+            references.incrementAndGet();
+        }
+
+        // False once another instance has taken the unit over
+        public boolean isHeld() {
+            return !lost;
+        }
+
+        @Override
+        public void close() {
+            if (references.decrementAndGet() == 0) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            held.remove(this);
+            unitSlots.release();
+            if (!lost) {
+                try {
+                    store.release(unit, nodeId);
+                } catch (IOException e) {
+                    logger.warn("Failed to release lease on {}", unit, e);
+                }
+            }
+        }
+    }
+}
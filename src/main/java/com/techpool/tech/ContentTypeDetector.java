@@ -0,0 +1,229 @@
+package com.techpool.tech;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import org.apache.tika.Tika;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Detects content types from a header read once per file. Common formats are recognised by their
+ * magic numbers directly; anything else goes to a single shared Tika instance, which is costly to
+ * create because it loads the whole MIME repository.
+ */
+@Component
+public class ContentTypeDetector {
+    private static final Logger logger = LoggerFactory.getLogger(ContentTypeDetector.class);
+
+    public static final String DEFAULT_TYPE = "application/octet-stream";
+
+    // Enough for every magic number below and for Tika's text heuristics
+    private static final int HEADER_BYTES = 8 * 1024;
+
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] GIF = ascii("GIF8");
+    private static final byte[] TIFF_LE = {'I', 'I', 42, 0};
+    private static final byte[] TIFF_BE = {'M', 'M', 0, 42};
+    private static final byte[] BMP = ascii("BM");
+    private static final byte[] RIFF = ascii("RIFF");
+    private static final byte[] PDF = ascii("%PDF-");
+    private static final byte[] ZIP = {'P', 'K', 3, 4};
+    private static final byte[] OLE2 = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+            (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+    private static final byte[] EBML = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+    private static final byte[] FTYP = ascii("ftyp");
+    private static final byte[] WEBP = ascii("WEBP");
+    private static final byte[] AVI = ascii("AVI ");
+
+    private final Tika tika = new Tika();
+
+    @Autowired
+    private ThumbnailMetrics metrics;
+
+    /**
+     * Opens the file, reads its header and detects its type. The returned source owns the open
+     * channel and must be closed by the caller.
+     */
+    public ThumbnailSource open(File file) throws IOException {
+        return open(file, file.getName(), false);
+    }
+
+    /**
+     * Opens a file under a different logical name, e.g. an upload spooled to a temp file. A
+     * temporary file is deleted when the source is closed.
+     */
+    ThumbnailSource open(File file, String name, boolean temporary) throws IOException {
+        long start = System.nanoTime();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_BYTES, channel.size()));
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // positional reads until the header is full or the file ends
+            }
+            header.flip();
+            String type = detect(header, name);
+            logger.debug("Detected content type for {}: {}", name, type);
+            metrics.recordStage(ThumbnailMetrics.Stage.DETECT, type, System.nanoTime() - start);
+            return ThumbnailSource.ofFile(name, file, channel, header, type, temporary);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (temporary) {
+                Files.deleteIfExists(file.toPath());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps content held in memory; {@code data} is used from position 0 to its limit.
+     */
+    public ThumbnailSource open(String name, ByteBuffer data) {
+        long start = System.nanoTime();
+        ByteBuffer header = data.duplicate();
+        header.position(0).limit(Math.min(HEADER_BYTES, data.limit()));
+        String type = detect(header, name);
+        logger.debug("Detected content type for {}: {}", name, type);
+        metrics.recordStage(ThumbnailMetrics.Stage.DETECT, type, System.nanoTime() - start);
+        return ThumbnailSource.ofBytes(name, data, header.slice(), type);
+    }
+
+    public String detect(ByteBuffer header, String name) {
+        String type = detectMagic(header, extension(name));
+        if (type != null) {
+            return type;
+        }
+        byte[] bytes = new byte[header.remaining()];
+        header.duplicate().get(bytes);
+        try {
+            return tika.detect(bytes, name);
+        } catch (RuntimeException e) {
+            logger.warn("Content type detection failed for {}", name, e);
+            return DEFAULT_TYPE;
+        }
+    }
+
+    private static String detectMagic(ByteBuffer header, String extension) {
+        if (startsWith(header, 0, JPEG)) {
+            return "image/jpeg";
+        } else if (startsWith(header, 0, PNG)) {
+            return "image/png";
+        } else if (startsWith(header, 0, GIF)) {
+            return "image/gif";
+        } else if (startsWith(header, 0, TIFF_LE) || startsWith(header, 0, TIFF_BE)) {
+            return "image/tiff";
+        } else if (startsWith(header, 0, PDF)) {
+            return "application/pdf";
+        } else if (startsWith(header, 0, RIFF)) {
+            if (startsWith(header, 8, WEBP)) {
+                return "image/webp";
+            } else if (startsWith(header, 8, AVI)) {
+                return "video/x-msvideo";
+            }
+        } else if (startsWith(header, 4, FTYP)) {
+            return detectIsoMedia(header);
+        } else if (startsWith(header, 0, EBML)) {
+            return "webm".equals(extension) ? "video/webm" : "video/x-matroska";
+        } else if (startsWith(header, 0, ZIP)) {
+            // Office Open XML is a zip container; the extension tells which kind
+            return switch (extension) {
+                case "docx" ->
+                    "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+                case "xlsx" ->
+                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+                case "pptx" ->
+                    "application/vnd.openxmlformats-officedocument.presentationml.presentation";
+                default -> null;
+            };
+        } else if (startsWith(header, 0, OLE2)) {
+            return switch (extension) {
+                case "doc" -> "application/msword";
+                case "xls" -> "application/vnd.ms-excel";
+                case "ppt" -> "application/vnd.ms-powerpoint";
+                default -> null;
+            };
+        } else if (startsWith(header, 0, BMP) && "bmp".equals(extension)) {
+            // Two bytes are too weak a signature on their own
+            return "image/bmp";
+        }
+        return null;
+    }
+
+    /**
+     * ISO base media files (MP4, QuickTime, HEIF, AVIF, M4A) share the {@code ftyp} box; its
+     * major brand, or failing that a compatible brand, tells them apart. Generic brands such as
+     * {@code mif1} or {@code isom} only say which container rules apply, so more specific
+     * compatible brands win over them.
+     */
+    private static String detectIsoMedia(ByteBuffer header) {
+        if (header.remaining() < 12) {
+            return "video/mp4";
+        }
+        String major = brand(header, 8);
+        String type = brandType(major);
+        if (type != null && !type.equals("video/mp4")) {
+            return type;
+        }
+        long boxSize = Integer.toUnsignedLong(header.getInt(header.position()));
+        int end = (int) Math.min(header.remaining(), Math.max(16, boxSize));
+        String fallback = major.equals("mif1") || major.equals("msf1") ? "image/heif"
+                : "video/mp4";
+        for (int offset = 16; offset + 4 <= end; offset += 4) {
+            String compatible = brandType(brand(header, offset));
+            if (compatible != null && !compatible.equals("video/mp4")) {
+                return compatible;
+            }
+        }
+        return fallback;
+    }
+
+    private static String brandType(String brand) {
+        return switch (brand) {
+            case "avif", "avis" -> "image/avif";
+            case "heic", "heix", "heim", "heis", "hevc", "hevx" -> "image/heic";
+            case "M4A ", "M4B ", "M4P " -> "audio/mp4";
+            case "qt  " -> "video/quicktime";
+            case "3gp4", "3gp5", "3gp6", "3g2a" -> "video/3gpp";
+            case "isom", "iso2", "mp41", "mp42", "avc1", "dash", "M4V " -> "video/mp4";
+            default -> null;
+        };
+    }
+
+    private static String brand(ByteBuffer header, int offset) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = header.get(header.position() + offset + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean startsWith(ByteBuffer header, int offset, byte[] magic) {
+        if (header.remaining() < offset + magic.length) {
+            return false;
+        }
+        int base = header.position() + offset;
+        for (int i = 0; i < magic.length; i++) {
+            if (header.get(base + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
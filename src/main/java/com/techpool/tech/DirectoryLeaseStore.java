@@ -0,0 +1,227 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Leases as small files in a directory every instance can reach, such as a share next to the
+ * tree being thumbnailed. Each lease file records its owner and expiry. Taking, renewing and
+ * releasing a lease read, check and replace it while holding a {@code .lock} file next to it,
+ * created with a hard link from a temp file, which is atomic on local file systems and NFS alike.
+ * A lease is replaced by renaming a new file over it, so a live lease never goes missing. Expiry
+ * times come from the owner's clock, so instances need clocks that agree to well within the lease
+ * TTL.
+ */
+public class DirectoryLeaseStore implements LeaseStore {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryLeaseStore.class);
+
+    // A lock is held for one read and rename; one older than this was left by a crashed instance
+    private static final long LOCK_TTL_MILLIS = 10_000;
+    private static final long LOCK_POLL_MILLIS = 5;
+
+    private record Lease(String owner, long expiresAt) {
+    }
+
+    private final Path directory;
+
+    public DirectoryLeaseStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public boolean tryAcquire(String unit, String owner, long ttlMillis) throws IOException {
+        Path path = leasePath(unit);
+        if (isLive(read(path))) {
+            return false;
+        }
+        Path lock = lock(path, unit);
+        try {
+            Lease current = read(path);
+            if (isLive(current)) {
+                return false;
+            }
+            if (current != null) {
+                logger.info("Taking over expired lease on {} from {}", unit, current.owner());
+            }
+            replace(path, unit, owner, ttlMillis);
+            return true;
+        } finally {
+            Files.deleteIfExists(lock);
+        }
+    }
+
+    @Override
+    public boolean renew(String unit, String owner, long ttlMillis) throws IOException {
+        Path path = leasePath(unit);
+        if (!isOwnedBy(read(path), owner)) {
+            return false;
+        }
+        Path lock = lock(path, unit);
+        try {
+            // Checked again under the lock, so a takeover since the read is never overwritten
+            if (!isOwnedBy(read(path), owner)) {
+                return false;
+            }
+            replace(path, unit, owner, ttlMillis);
+            return true;
+        } finally {
+            Files.deleteIfExists(lock);
+        }
+    }
+
+    @Override
+    public void release(String unit, String owner) throws IOException {
+        Path path = leasePath(unit);
+        if (!isOwnedBy(read(path), owner)) {
+            return;
+        }
+        Path lock = lock(path, unit);
+        try {
+            if (isOwnedBy(read(path), owner)) {
+                Files.deleteIfExists(path);
+            }
+        } finally {
+            Files.deleteIfExists(lock);
+        }
+    }
+
+    private static boolean isLive(Lease lease) {
+        return lease != null && lease.expiresAt() > System.currentTimeMillis();
+    }
+
+    private static boolean isOwnedBy(Lease lease, String owner) {
+        return lease != null && lease.owner().equals(owner);
+    }
+
+    // Atomically swaps in a new lease file; readers see the old lease or the new one
+    private void replace(Path path, String unit, String owner, long ttlMillis) throws IOException {
+        Path tmp = write(path, unit, owner, ttlMillis);
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Waits for the lock on a lease file and returns it. A lock past its expiry is broken, so an
+     * instance that crashed while holding one holds up the others for at most the lock TTL.
+     */
+    private Path lock(Path path, String unit) throws IOException {
+        Path lock = path.resolveSibling(path.getFileName() + ".lock");
+        String token = UUID.randomUUID().toString();
+        while (!tryCreate(lock, unit, token, LOCK_TTL_MILLIS)) {
+            Lease held = read(lock);
+            if (held != null && !isLive(held)) {
+                breakLock(lock, held);
+                continue;
+            }
+            try {
+                Thread.sleep(LOCK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + lock);
+            }
+        }
+        return lock;
+    }
+
+    private void breakLock(Path lock, Lease held) throws IOException {
+        // Of several instances breaking it only one move succeeds
+        Path stale = moveAside(lock, ".stale");
+        if (stale == null) {
+            return;
+        }
+        try {
+            Lease moved = read(stale);
+            if (moved != null && !moved.equals(held)) {
+                // Taken again since we looked; put it back
+                restore(lock, stale);
+            } else {
+                logger.warn("Breaking stale lease lock {}", lock);
+            }
+        } finally {
+            Files.deleteIfExists(stale);
+        }
+    }
+
+    // Atomically moves a file to a unique name; null when there was no file to move
+    private Path moveAside(Path path, String suffix) throws IOException {
+        Path aside = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + suffix);
+        try {
+            Files.move(path, aside, StandardCopyOption.ATOMIC_MOVE);
+            return aside;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private boolean tryCreate(Path path, String unit, String owner, long ttlMillis)
+            throws IOException {
+        Path tmp = write(path, unit, owner, ttlMillis);
+        try {
+            Files.createLink(path, tmp);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void restore(Path path, Path stale) throws IOException {
+        try {
+            Files.createLink(path, stale);
+        } catch (FileAlreadyExistsException e) {
+            // Someone holds it again either way
+        }
+    }
+
+    private Path write(Path path, String unit, String owner, long ttlMillis) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        Files.writeString(tmp, owner + "\n" + (System.currentTimeMillis() + ttlMillis) + "\n"
+                + unit + "\n", StandardCharsets.UTF_8);
+        return tmp;
+    }
+
+    private static Lease read(Path path) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            return new Lease(lines.get(0), Long.parseLong(lines.get(1)));
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            // Torn or foreign file; treat it as expired so it gets replaced
+            return new Lease("", 0);
+        }
+    }
+
+    // Unit keys are paths, so the file name is their hash
+    private Path leasePath(String unit) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(unit.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(digest, 0, 16) + ".lease");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.techpool.tech;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTBr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STBrType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import fr.opensagres.poi.xwpf.converter.pdf.PdfConverter;
+import fr.opensagres.poi.xwpf.converter.pdf.PdfOptions;
+
+/**
+ * Renders a preview of the first page of a DOCX. The document is parsed once, trimmed to the
+ * content that can appear on the first page, and only that is converted to PDF and rendered. The
+ * preview text is taken from the same parsed document, so the text fallback needs no second
+ * parse. Conversion runs on the calling thread, under the handler's deadline, so the package is
+ * only released once nothing uses it any more.
+ */
+@Component
+public class DocxPreviewEngine {
+    private static final Logger logger = LoggerFactory.getLogger(DocxPreviewEngine.class);
+
+    /**
+     * Result of a preview attempt. {@code image} is null when conversion failed, in which case
+     * {@code text} holds the first-page text for a text preview.
+     */
+    public record Preview(BufferedImage image, String text) {
+    }
+
+    @Autowired
+    private PdfPageRenderer pdfPageRenderer;
+
+    // Roughly what fits on one page; conversion stops being bounded without it
+    @Value("${thumbnail.docx.content-budget-chars:4000}")
+    private int contentBudgetChars;
+
+    @Value("${thumbnail.docx.max-body-elements:200}")
+    private int maxBodyElements;
+
+    public Preview render(ThumbnailSource source, List<ThumbnailRendition> renditions,
+            long maxRenderBytes) throws IOException {
+        OPCPackage pkg;
+        try {
+            // Read-only open of a file works off the zip directory instead of buffering it all
+            pkg = source.isInMemory() ? OPCPackage.open(source.openStream())
+                    : OPCPackage.open(source.file(), PackageAccess.READ);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid DOCX: " + source.name(), e);
+        }
+        try {
+            XWPFDocument doc = new XWPFDocument(pkg);
+            String text = trimToFirstPage(doc);
+            BufferedImage image = null;
+            try {
+                image = convert(doc, renditions, maxRenderBytes);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Document rendering failed for {}, falling back to text preview",
+                        source.name(), e);
+            }
+            return new Preview(image, text);
+        } finally {
+            // Closing a read-only package would try to save it; revert just releases it
+            pkg.revert();
+        }
+    }
+
+    private BufferedImage convert(XWPFDocument doc, List<ThumbnailRendition> renditions,
+            long maxRenderBytes) throws IOException {
+        ByteArrayOutputStream pdfOut = new ByteArrayOutputStream();
+        PdfConverter.getInstance().convert(doc, pdfOut, PdfOptions.create());
+        try (PDDocument pdfDoc = PDDocument.load(pdfOut.toByteArray(), null, null, null,
+                pdfPageRenderer.memoryUsageSetting())) {
+            return pdfPageRenderer.renderFirstPage(pdfDoc, renditions, maxRenderBytes);
+        }
+    }
+
+    /**
+     * Removes every body element after the first page's worth of content and returns the text of
+     * what is left.
+     */
+    private String trimToFirstPage(XWPFDocument doc) {
+        List<IBodyElement> elements = doc.getBodyElements();
+        StringBuilder text = new StringBuilder();
+        int keep = 0;
+        while (keep < elements.size() && keep < maxBodyElements
+                && text.length() < contentBudgetChars) {
+            IBodyElement element = elements.get(keep++);
+            if (element instanceof XWPFParagraph paragraph) {
+                if (keep > 1 && paragraph.isPageBreak()) {
+                    keep--;
+                    break;
+                }
+                text.append(paragraph.getText()).append('\n');
+                if (endsPage(paragraph)) {
+                    break;
+                }
+            } else if (element instanceof XWPFTable table) {
+                text.append(table.getText()).append('\n');
+            }
+        }
+        for (int i = elements.size() - 1; i >= keep; i--) {
+            doc.removeBodyElement(i);
+        }
+        return text.length() > contentBudgetChars ? text.substring(0, contentBudgetChars)
+                : text.toString();
+    }
+
+    // Explicit page breaks, or the page break Word records where it last laid out the document
+    private boolean endsPage(XWPFParagraph paragraph) {
+        for (XWPFRun run : paragraph.getRuns()) {
+            if (!run.getCTR().getLastRenderedPageBreakList().isEmpty()) {
+                return true;
+            }
+            for (CTBr br : run.getCTR().getBrList()) {
+                if (br.getType() == STBrType.PAGE) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,222 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Bounds how long a handler may work on one source. The handler runs on a separate thread while
+ * the worker waits for it; past the deadline the handler is interrupted and abandoned, so one
+ * pathological file costs the worker its deadline and no more. Handlers stop at their next
+ * interruptible wait or read of the (then closed) source; a render that does neither runs to the
+ * end in the background, and whatever it holds is released only then.
+ * <p>
+ * Runner threads are limited. While abandoned handlers hold them all, workers wait for a runner
+ * to come free instead of piling up more threads and heap behind decoders that cannot be
+ * stopped.
+ */
+@Component
+public class HandlerDeadlines {
+    private static final Logger logger = LoggerFactory.getLogger(HandlerDeadlines.class);
+
+    private static final int RUNNING = 0;
+    private static final int FINISHED = 1;
+    private static final int ABANDONED = 2;
+
+    /**
+     * Thrown when a handler did not finish within its deadline.
+     */
+    public static class DeadlineExceededException extends IOException {
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    @FunctionalInterface
+    public interface HandlerTask {
+        void run() throws IOException;
+    }
+
+    // 0 runs handlers on the worker thread with no deadline
+    @Value("${thumbnail.deadline.default-seconds:120}")
+    private long defaultSeconds;
+
+    // Overrides by handler key, e.g. pdf:30,word:30,video:90
+    @Value("${thumbnail.deadline.handlers:}")
+    private String handlerSpec;
+
+    // Handler threads, running and abandoned together; 0 uses four per CPU, at least 16
+    @Value("${thumbnail.deadline.max-runners:0}")
+    private int maxRunners;
+
+    private final Map<String, Long> handlerSeconds = new HashMap<>();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final AtomicInteger abandoned = new AtomicInteger();
+    private Semaphore runnerSlots;
+    private ThreadPoolExecutor runners;
+
+    @PostConstruct
+    public void init() {
+        for (String entry : handlerSpec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid handler deadline: " + entry);
+            }
+            handlerSeconds.put(parts[0].trim().toLowerCase(Locale.ROOT),
+                    Long.parseLong(parts[1].trim()));
+        }
+        if (maxRunners <= 0) {
+            maxRunners = Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+        }
+        runnerSlots = new Semaphore(maxRunners);
+        // The slots keep tasks within the thread limit; the queue only covers a runner that has
+        // released its slot but not yet gone back to the pool
+        runners = new ThreadPoolExecutor(maxRunners, maxRunners, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r,
+                            "thumbnail-handler-" + threadCounter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        runners.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (runners != null) {
+            runners.shutdownNow();
+        }
+    }
+
+    public long deadlineMillis(ThumbnailHandler handler) {
+        return TimeUnit.SECONDS.toMillis(handlerSeconds.getOrDefault(handler.key(),
+                defaultSeconds));
+    }
+
+    // Handlers past their deadline that have not returned yet
+    public int getAbandonedCount() {
+        return abandoned.get();
+    }
+
+    /**
+     * Runs {@code task} within the handler's deadline. When it is exceeded, or the caller is
+     * interrupted, {@code onExpiry} runs on the calling thread to cut the task off, e.g. by
+     * closing its source, and {@code release} is closed once the abandoned task finally returns;
+     * the caller must then leave it alone. {@code release} is not touched otherwise.
+     */
+    public void run(ThumbnailHandler handler, String name, HandlerTask task, Runnable onExpiry,
+            AutoCloseable release) throws IOException, InterruptedException {
+        long limit = deadlineMillis(handler);
+        if (limit <= 0) {
+            task.run();
+            return;
+        }
+        if (!runnerSlots.tryAcquire()) {
+            logger.warn("All {} handler runners are busy ({} abandoned), {} waits for one",
+                    maxRunners, abandoned.get(), name);
+            runnerSlots.acquire();
+        }
+        AtomicInteger state = new AtomicInteger(RUNNING);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Thread[] runner = new Thread[1];
+        try {
+            runners.execute(() -> {
+                synchronized (runner) {
+                    runner[0] = Thread.currentThread();
+                }
+                try {
+                    task.run();
+                    done.complete(null);
+                } catch (Throwable t) {
+                    done.completeExceptionally(t);
+                } finally {
+                    synchronized (runner) {
+                        runner[0] = null;
+                        // An interrupt aimed at this task must not hit the next one
+                        Thread.interrupted();
+                    }
+                    if (!state.compareAndSet(RUNNING, FINISHED)) {
+                        abandoned.decrementAndGet();
+                        closeQuietly(release, name);
+                    }
+                    runnerSlots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            runnerSlots.release();
+            throw e;
+        }
+        try {
+            done.get(limit, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } catch (TimeoutException | InterruptedException e) {
+            abandoned.incrementAndGet();
+            if (!state.compareAndSet(RUNNING, ABANDONED)) {
+                abandoned.decrementAndGet();
+                // Finished just now; its outcome still counts
+                if (e instanceof InterruptedException interrupted) {
+                    throw interrupted;
+                }
+                try {
+                    done.get();
+                } catch (ExecutionException failed) {
+                    throw rethrow(failed);
+                }
+                return;
+            }
+            synchronized (runner) {
+                if (runner[0] != null) {
+                    runner[0].interrupt();
+                }
+            }
+            onExpiry.run();
+            if (e instanceof InterruptedException interrupted) {
+                throw interrupted;
+            }
+            throw new DeadlineExceededException(name + " exceeded the " + handler.key()
+                    + " deadline of " + limit + " ms");
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable release, String name) {
+        try {
+            release.close();
+        } catch (Exception e) {
+            logger.warn("Failed to release resources of abandoned handler for {}", name, e);
+        }
+    }
+
+    // The handler's own exception, as if it had run on the calling thread
+    private static IOException rethrow(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException io) {
+            return io;
+        }
+        if (cause instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IOException(cause);
+    }
+}
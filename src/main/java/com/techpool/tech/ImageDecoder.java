@@ -0,0 +1,203 @@
+package com.techpool.tech;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decodes images at roughly the size needed for a thumbnail instead of at full resolution. Only
+ * the header is read up front; the cheapest acceptable source is then chosen: an embedded
+ * EXIF/JFIF thumbnail, a TIFF reduced-resolution image, or the main image read with source
+ * subsampling.
+ */
+@Component
+public class ImageDecoder {
+    private static final Logger logger = LoggerFactory.getLogger(ImageDecoder.class);
+
+    // Decode at up to twice the output size so the final resize still has pixels to average
+    private static final int QUALITY_MARGIN = 2;
+    // Decoded rasters are at most four bytes per pixel for the formats the service reads
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Decodes the image at a resolution that still covers every requested rendition, and at
+     * most {@code maxBytes} of pixels; past that the image is subsampled further.
+     */
+    public BufferedImage decode(ThumbnailSource source, List<ThumbnailRendition> renditions,
+            long maxBytes) throws IOException {
+        return read(source, reader -> decode(reader, source.name(), renditions, maxBytes));
+    }
+
+    /**
+     * Pixel memory of the decode from the image header alone: at the usual subsampling, and at
+     * the least that still covers the renditions. Embedded thumbnails and TIFF pyramids can make
+     * the actual decode smaller.
+     */
+    public AdmissionController.Estimate estimate(ThumbnailSource source,
+            List<ThumbnailRendition> renditions) throws IOException {
+        return read(source, reader -> {
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            Dimension needed = neededSize(width, height, renditions);
+            int subsampling = subsampling(width, height, needed, Long.MAX_VALUE);
+            return AdmissionController.Estimate.reducible(
+                    decodedBytes(width, height, subsampling),
+                    (long) needed.width * needed.height * BYTES_PER_PIXEL);
+        });
+    }
+
+    private interface ReaderTask<T> {
+        T apply(ImageReader reader) throws IOException;
+    }
+
+    private <T> T read(ThumbnailSource source, ReaderTask<T> task) throws IOException {
+        // Reads through the source opened for detection instead of reopening the file
+        try (ImageInputStream input = new SourceImageInputStream(source)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unreadable image - possibly corrupt or unsupported format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, false, false);
+                return task.apply(reader);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Largest size any rendition will scale the image to
+    private static Dimension neededSize(int width, int height,
+            List<ThumbnailRendition> renditions) {
+        int neededWidth = 1;
+        int neededHeight = 1;
+        for (ThumbnailRendition rendition : renditions) {
+            Dimension size = rendition.scaledSize(width, height);
+            neededWidth = Math.max(neededWidth, size.width);
+            neededHeight = Math.max(neededHeight, size.height);
+        }
+        return new Dimension(neededWidth, neededHeight);
+    }
+
+    private static int subsampling(int width, int height, Dimension needed, long maxBytes) {
+        int subsampling = Math.max(1, Math.min(width / (needed.width * QUALITY_MARGIN),
+                height / (needed.height * QUALITY_MARGIN)));
+        if (decodedBytes(width, height, subsampling) > maxBytes) {
+            subsampling = Math.max(subsampling, (int) Math.ceil(
+                    Math.sqrt((double) width * height * BYTES_PER_PIXEL / Math.max(1, maxBytes))));
+        }
+        return subsampling;
+    }
+
+    private static long decodedBytes(int width, int height, int subsampling) {
+        return (long) ((width + subsampling - 1) / subsampling)
+                * ((height + subsampling - 1) / subsampling) * BYTES_PER_PIXEL;
+    }
+
+    private BufferedImage decode(ImageReader reader, String name,
+            List<ThumbnailRendition> renditions, long maxBytes) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        logger.debug("Original image dimensions for {}: {}x{}", name, width, height);
+
+        Dimension needed = neededSize(width, height, renditions);
+        int neededWidth = needed.width;
+        int neededHeight = needed.height;
+
+        BufferedImage embedded = readEmbeddedThumbnail(reader, width, height, neededWidth,
+                neededHeight);
+        if (embedded != null) {
+            logger.debug("Using embedded {}x{} thumbnail for {}", embedded.getWidth(),
+                    embedded.getHeight(), name);
+            return embedded;
+        }
+
+        int imageIndex = findReducedResolutionImage(reader, width, height, neededWidth,
+                neededHeight);
+        if (imageIndex > 0) {
+            width = reader.getWidth(imageIndex);
+            height = reader.getHeight(imageIndex);
+            logger.debug("Using reduced-resolution image {} ({}x{}) for {}", imageIndex, width,
+                    height, name);
+        }
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        int subsampling = subsampling(width, height, needed, maxBytes);
+        if (subsampling > 1) {
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            logger.debug("Decoding {} with subsampling {}", name, subsampling);
+        }
+        BufferedImage image = reader.read(imageIndex, param);
+        if (image == null) {
+            throw new IOException("Unreadable image - possibly corrupt or unsupported format");
+        }
+        return image;
+    }
+
+    private BufferedImage readEmbeddedThumbnail(ImageReader reader, int width, int height,
+            int neededWidth, int neededHeight) {
+        try {
+            if (!reader.readerSupportsThumbnails() || !reader.hasThumbnails(0)) {
+                return null;
+            }
+            for (int i = 0; i < reader.getNumThumbnails(0); i++) {
+                int w = reader.getThumbnailWidth(0, i);
+                int h = reader.getThumbnailHeight(0, i);
+                if (w >= neededWidth && h >= neededHeight && sameAspect(w, h, width, height)) {
+                    return reader.readThumbnail(0, i);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Broken thumbnail segments are common; the main image is still usable
+            logger.debug("Ignoring unreadable embedded thumbnail", e);
+        }
+        return null;
+    }
+
+    // TIFF pyramids store smaller copies of the image as additional IFDs
+    private int findReducedResolutionImage(ImageReader reader, int width, int height,
+            int neededWidth, int neededHeight) {
+        String format;
+        try {
+            format = reader.getFormatName().toLowerCase();
+        } catch (IOException e) {
+            return 0;
+        }
+        if (!format.contains("tif")) {
+            return 0;
+        }
+        int best = 0;
+        long bestPixels = (long) width * height;
+        try {
+            int count = reader.getNumImages(true);
+            for (int i = 1; i < count; i++) {
+                int w = reader.getWidth(i);
+                int h = reader.getHeight(i);
+                if (w >= neededWidth && h >= neededHeight && (long) w * h < bestPixels
+                        && sameAspect(w, h, width, height)) {
+                    best = i;
+                    bestPixels = (long) w * h;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Could not inspect TIFF directories", e);
+        }
+        return best;
+    }
+
+    private boolean sameAspect(int w1, int h1, int w2, int h2) {
+        double a = (double) w1 / h1;
+        double b = (double) w2 / h2;
+        return Math.abs(a - b) / b < 0.02;
+    }
+}
@@ -0,0 +1,48 @@
+package com.techpool.tech;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Thumbnails for raster images, decoded at reduced resolution by {@link ImageDecoder}.
+ */
+@Component
+public class ImageThumbnailHandler implements ThumbnailHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ImageThumbnailHandler.class);
+
+    // Photographic formats are written as JPEG; graphics keep PNG for transparency and edges
+    private static final Set<String> PHOTO_TYPES =
+            Set.of("image/jpeg", "image/tiff", "image/bmp");
+
+    @Autowired
+    private ImageDecoder imageDecoder;
+
+    @Override
+    public boolean supports(String contentType) {
+        // e.g. HEIC or AVIF are images, but there is no reader here to decode them
+        return contentType.startsWith("image/")
+                && ImageIO.getImageReadersByMIMEType(contentType).hasNext();
+    }
+
+    @Override
+    public AdmissionController.Estimate estimateMemory(ThumbnailSource source,
+            List<ThumbnailRendition> renditions) throws IOException {
+        return imageDecoder.estimate(source, renditions);
+    }
+
+    @Override
+    public void generate(ThumbnailSource source, ThumbnailOutput output) throws IOException {
+        BufferedImage img = imageDecoder.decode(source, output.renditions(),
+                output.memoryLimit());
+        logger.debug("Decoded image dimensions: {}x{}", img.getWidth(), img.getHeight());
+        // save does the one and only resize per rendition
+        output.save(img, PHOTO_TYPES.contains(source.contentType()) ? "jpg" : "png");
+    }
+}
@@ -0,0 +1,38 @@
+package com.techpool.tech;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leases held in this JVM only. Stands in for a shared store when a single instance runs in
+ * cluster mode, e.g. locally or in tests.
+ */
+public class InMemoryLeaseStore implements LeaseStore {
+
+    private record Lease(String owner, long expiresAt) {
+    }
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean tryAcquire(String unit, String owner, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        Lease lease = new Lease(owner, now + ttlMillis);
+        Lease result = leases.compute(unit,
+                (key, current) -> current == null || current.expiresAt() <= now ? lease : current);
+        return result == lease;
+    }
+
+    @Override
+    public boolean renew(String unit, String owner, long ttlMillis) {
+        Lease lease = new Lease(owner, System.currentTimeMillis() + ttlMillis);
+        return leases.computeIfPresent(unit,
+                (key, current) -> current.owner().equals(owner) ? lease : current) == lease;
+    }
+
+    @Override
+    public void release(String unit, String owner) {
+        leases.computeIfPresent(unit,
+                (key, current) -> current.owner().equals(owner) ? null : current);
+    }
+}
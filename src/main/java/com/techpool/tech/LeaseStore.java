@@ -0,0 +1,23 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+
+/**
+ * Where cluster work-unit leases live. A lease belongs to one owner until it is released or its
+ * expiry passes without a renewal, after which any owner may take it over.
+ */
+public interface LeaseStore {
+
+    /**
+     * Takes the lease on {@code unit} for {@code ttlMillis} if it is free or expired. Returns
+     * false when another owner holds it.
+     */
+    boolean tryAcquire(String unit, String owner, long ttlMillis) throws IOException;
+
+    /**
+     * Extends a lease held by {@code owner}. Returns false when it was lost to another owner.
+     */
+    boolean renew(String unit, String owner, long ttlMillis) throws IOException;
+
+    void release(String unit, String owner) throws IOException;
+}
@@ -0,0 +1,189 @@
+package com.techpool.tech;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entries keyed by source path, kept in memory and persisted as an append-only log of put and
+ * remove records that is replayed on open. Backs the manifest and the quarantine. A record torn
+ * by a crash, or otherwise unreadable, ends the log: it is cut off there, and appends continue
+ * after the last whole record. The log is rewritten on open once it is mostly superseded records.
+ */
+final class PathRecordLog<E> {
+    private static final Logger logger = LoggerFactory.getLogger(PathRecordLog.class);
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    // How an entry is written after its record's path
+    interface Codec<E> {
+        void write(DataOutputStream out, E entry) throws IOException;
+
+        E read(DataInputStream in) throws IOException;
+    }
+
+    private final String name;
+    private final Codec<E> codec;
+    private final Map<String, E> entries = new ConcurrentHashMap<>();
+    private DataOutputStream log;
+    private long logRecords;
+
+    // name is what logs call it, e.g. "thumbnail manifest"
+    PathRecordLog(String name, Codec<E> codec) {
+        this.name = name;
+        this.codec = codec;
+    }
+
+    void open(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        if (Files.exists(path)) {
+            replay(path);
+            // Superseded records only slow startup
+            if (logRecords > 2L * entries.size() + 1000) {
+                compact(path);
+            }
+        }
+        log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        logger.info("Loaded {} {} with {} entries", name, path, entries.size());
+    }
+
+    synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    E get(String path) {
+        return entries.get(path);
+    }
+
+    Map<String, E> snapshot() {
+        return Map.copyOf(entries);
+    }
+
+    void put(String path, E entry) {
+        entries.put(path, entry);
+        append(RECORD_PUT, path, entry);
+    }
+
+    // Returns whether there was an entry to remove
+    boolean remove(String path) {
+        if (entries.remove(path) == null) {
+            return false;
+        }
+        append(RECORD_REMOVE, path, null);
+        return true;
+    }
+
+    private synchronized void append(byte type, String path, E entry) {
+        if (log == null) {
+            return;
+        }
+        try {
+            writeRecord(log, type, path, entry);
+            log.flush();
+            logRecords++;
+        } catch (IOException e) {
+            logger.error("Failed to append to {}", name, e);
+        }
+    }
+
+    private void writeRecord(DataOutputStream out, byte type, String path, E entry)
+            throws IOException {
+        out.writeByte(type);
+        out.writeUTF(path);
+        if (type == RECORD_PUT) {
+            codec.write(out, entry);
+        }
+    }
+
+    private void replay(Path path) throws IOException {
+        long good = 0;
+        try (CountingInputStream counted = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(path)));
+                DataInputStream in = new DataInputStream(counted)) {
+            int type;
+            while ((type = in.read()) != -1) {
+                String key = in.readUTF();
+                if (type == RECORD_PUT) {
+                    entries.put(key, codec.read(in));
+                } else if (type == RECORD_REMOVE) {
+                    entries.remove(key);
+                } else {
+                    throw new IOException("Corrupt record type " + type);
+                }
+                logRecords++;
+                good = counted.count;
+            }
+            return;
+        } catch (IOException e) {
+            logger.warn("Truncating {} {} at byte {}: {}", name, path, good, e.toString());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(good);
+        }
+    }
+
+    private void compact(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        try (OutputStream os = Files.newOutputStream(tmp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            for (Map.Entry<String, E> e : entries.entrySet()) {
+                writeRecord(out, RECORD_PUT, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Compacted {} from {} to {} records", name, logRecords, entries.size());
+        logRecords = entries.size();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
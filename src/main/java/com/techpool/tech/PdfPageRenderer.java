@@ -0,0 +1,137 @@
+package com.techpool.tech;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads PDFs under a bounded memory setting and renders the first page directly at the
+ * resolution the renditions need, rather than at a fixed DPI that is downscaled afterwards.
+ */
+@Component
+public class PdfPageRenderer {
+    private static final Logger logger = LoggerFactory.getLogger(PdfPageRenderer.class);
+
+    private static final float POINTS_PER_INCH = 72f;
+    // Rendered pages are INT_RGB
+    private static final int BYTES_PER_PIXEL = 4;
+    // Parsed objects, fonts and images of the first page, on top of the buffered file
+    private static final long PARSE_OVERHEAD_BYTES = 16L * 1024 * 1024;
+
+    // mixed, temp-file or main
+    @Value("${thumbnail.pdf.memory-mode:mixed}")
+    private String memoryMode;
+
+    @Value("${thumbnail.pdf.max-main-memory-mb:16}")
+    private long maxMainMemoryMb;
+
+    @Value("${thumbnail.pdf.min-dpi:18}")
+    private float minDpi;
+
+    @Value("${thumbnail.pdf.max-dpi:300}")
+    private float maxDpi;
+
+    // Trade rendering fidelity that is invisible at thumbnail size for speed
+    @Value("${thumbnail.pdf.fast-render:true}")
+    private boolean fastRender;
+
+    public PDDocument load(ThumbnailSource source) throws IOException {
+        if (source.isInMemory()) {
+            return PDDocument.load(source.openStream(), memoryUsageSetting());
+        }
+        return PDDocument.load(source.file(), memoryUsageSetting());
+    }
+
+    public MemoryUsageSetting memoryUsageSetting() {
+        long maxMainBytes = maxMainMemoryMb * 1024 * 1024;
+        return switch (memoryMode) {
+            case "temp-file" -> MemoryUsageSetting.setupTempFileOnly();
+            // Hard cap: loading fails instead of growing the heap past the limit
+            case "main" -> MemoryUsageSetting.setupMainMemoryOnly(maxMainBytes);
+            default -> MemoryUsageSetting.setupMixed(maxMainBytes);
+        };
+    }
+
+    // Heap the loaded document may take, given how much of it is buffered in memory
+    public long loadBytes(ThumbnailSource source) throws IOException {
+        long buffered = memoryMode.equals("temp-file") ? 0
+                : Math.min(source.size(), maxMainMemoryMb * 1024 * 1024);
+        return buffered + PARSE_OVERHEAD_BYTES;
+    }
+
+    /**
+     * Loading plus a page rendered at about the largest rendition's size. The page box is only
+     * known once the document is parsed, so an unusual page is caught by the limit passed to
+     * {@link #renderFirstPage} instead.
+     */
+    public AdmissionController.Estimate estimate(ThumbnailSource source,
+            List<ThumbnailRendition> renditions) throws IOException {
+        long pixels = 1;
+        for (ThumbnailRendition rendition : renditions) {
+            pixels = Math.max(pixels, (long) rendition.width() * rendition.height());
+        }
+        long load = loadBytes(source);
+        // Twice the rendition, for fill renditions and pages of a different shape
+        return AdmissionController.Estimate.reducible(load + 2 * pixels * BYTES_PER_PIXEL,
+                load + pixels * BYTES_PER_PIXEL / 4);
+    }
+
+    /**
+     * Renders page 0 at the scale that produces the largest requested rendition, lowered so the
+     * page stays within {@code maxBytes}.
+     */
+    public BufferedImage renderFirstPage(PDDocument document, List<ThumbnailRendition> renditions,
+            long maxBytes) throws IOException {
+        PDPage page = document.getPage(0);
+        // Rendering uses the crop box, which defaults to the MediaBox
+        PDRectangle box = page.getCropBox();
+        float pageWidth = box.getWidth();
+        float pageHeight = box.getHeight();
+        if (page.getRotation() % 180 != 0) {
+            float swap = pageWidth;
+            pageWidth = pageHeight;
+            pageHeight = swap;
+        }
+
+        float scale = 0;
+        for (ThumbnailRendition rendition : renditions) {
+            float sx = rendition.width() / pageWidth;
+            float sy = rendition.height() / pageHeight;
+            scale = Math.max(scale, rendition.fitMode() == ThumbnailRendition.FitMode.FILL
+                    ? Math.max(sx, sy) : Math.min(sx, sy));
+        }
+        scale = Math.max(minDpi / POINTS_PER_INCH, Math.min(maxDpi / POINTS_PER_INCH, scale));
+        double maxPixels = Math.max(1, maxBytes / BYTES_PER_PIXEL);
+        if ((double) pageWidth * scale * pageHeight * scale > maxPixels) {
+            // A poster-sized page even at the lowest DPI; render below it rather than run out
+            scale = (float) Math.sqrt(maxPixels / ((double) pageWidth * pageHeight));
+            logger.debug("Reduced rendering of {}x{}pt page to {} DPI to fit the memory budget",
+                    pageWidth, pageHeight, scale * POINTS_PER_INCH);
+        }
+        logger.debug("Rendering {}x{}pt page at {} DPI", pageWidth, pageHeight,
+                scale * POINTS_PER_INCH);
+
+        PDFRenderer renderer = new PDFRenderer(document);
+        if (fastRender) {
+            renderer.setSubsamplingAllowed(true);
+            RenderingHints hints = new RenderingHints(RenderingHints.KEY_RENDERING,
+                    RenderingHints.VALUE_RENDER_SPEED);
+            hints.put(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            hints.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            renderer.setRenderingHints(hints);
+        }
+        return renderer.renderImage(0, scale, ImageType.RGB);
+    }
+}
@@ -0,0 +1,72 @@
+package com.techpool.tech;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * PDF thumbnails from the first page, with a text preview for protected documents.
+ */
+@Component
+public class PdfThumbnailHandler implements ThumbnailHandler {
+    private static final Logger logger = LoggerFactory.getLogger(PdfThumbnailHandler.class);
+
+    @Autowired
+    private PdfPageRenderer pdfPageRenderer;
+
+    @Override
+    public boolean supports(String contentType) {
+        return contentType.equals("application/pdf");
+    }
+
+    @Override
+    public ThumbnailExecutionEngine.WorkerPool workerPool() {
+        return ThumbnailExecutionEngine.WorkerPool.DOCUMENT;
+    }
+
+    @Override
+    public AdmissionController.Estimate estimateMemory(ThumbnailSource source,
+            List<ThumbnailRendition> renditions) throws IOException {
+        return pdfPageRenderer.estimate(source, renditions);
+    }
+
+    @Override
+    public void generate(ThumbnailSource source, ThumbnailOutput output) throws IOException {
+        long renderLimit = output.memoryLimit() - pdfPageRenderer.loadBytes(source);
+        try (PDDocument document = pdfPageRenderer.load(source)) {
+            if (document.isEncrypted()) {
+                // Try empty password first
+                try {
+                    document.setAllSecurityToBeRemoved(true);
+                    BufferedImage image = pdfPageRenderer.renderFirstPage(document,
+                            output.renditions(), renderLimit);
+                    output.save(image, "jpg");
+                } catch (Exception e) {
+                    logger.info("Password-protected PDF: {} - generating text preview",
+                            source.name());
+                    output.saveTextPreview(extractText(document));
+                }
+            } else {
+                BufferedImage image = pdfPageRenderer.renderFirstPage(document,
+                        output.renditions(), renderLimit);
+                output.save(image, "jpg");
+            }
+        } catch (InvalidPasswordException e) {
+            logger.info("Password-protected PDF: {} - generating text preview", source.name());
+            output.saveTextPreview("Password Protected\nContent Not Accessible");
+        }
+    }
+
+    private String extractText(PDDocument document) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        String text = stripper.getText(document);
+        return text.length() > 200 ? text.substring(0, 200) + "..." : text;
+    }
+}
@@ -0,0 +1,46 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * ImageIO stream over a {@link ThumbnailSource}, using positional reads so the source's channel or
+ * buffer can be shared. Closing the stream does not close the source.
+ */
+class SourceImageInputStream extends ImageInputStreamImpl {
+    private final ThumbnailSource source;
+    private final byte[] one = new byte[1];
+
+    SourceImageInputStream(ThumbnailSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (length == 0) {
+            return 0;
+        }
+        int n = source.read(ByteBuffer.wrap(buffer, offset, length), streamPos);
+        if (n > 0) {
+            streamPos += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long length() {
+        try {
+            return source.size();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+}
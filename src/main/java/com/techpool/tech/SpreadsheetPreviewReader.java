@@ -0,0 +1,417 @@
+package com.techpool.tech;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+/**
+ * Reads the first few rows of a spreadsheet without building the POI object model. XLSX sheets
+ * are streamed with SAX and shared strings are only read up to the highest index actually used;
+ * XLS files go through the HSSF event model and stop at the first row past the limit; CSV reads
+ * are bounded in size and use an explicit charset.
+ */
+@Component
+public class SpreadsheetPreviewReader {
+
+    // A preview never needs more than this, even if a CSV has no line breaks at all
+    private static final int MAX_CSV_CHARS = 64 * 1024;
+
+    @Value("${thumbnail.csv.charset:UTF-8}")
+    private Charset csvCharset;
+
+    /**
+     * Thrown from parser callbacks once enough rows have been collected.
+     */
+    private static class EnoughRowsException extends SAXException {
+        EnoughRowsException() {
+            super("Preview rows collected");
+        }
+    }
+
+    public List<List<String>> readXlsx(ThumbnailSource source, int maxRows) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = source.isInMemory() ? OPCPackage.open(source.openStream())
+                    : OPCPackage.open(source.file(), PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Invalid XLSX: " + source.name(), e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return List.of();
+            }
+            SheetHandler handler = new SheetHandler(maxRows);
+            try (InputStream sheet = sheets.next()) {
+                parse(sheet, handler);
+            }
+            if (handler.maxSharedString >= 0) {
+                SharedStringsHandler strings =
+                        new SharedStringsHandler(handler.maxSharedString);
+                try (InputStream sst = reader.getSharedStringsData()) {
+                    parse(sst, strings);
+                }
+                handler.resolve(strings.strings);
+            }
+            return handler.rows;
+        } catch (OpenXML4JException e) {
+            throw new IOException("Invalid XLSX: " + source.name(), e);
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    private void parse(InputStream in, DefaultHandler handler) throws IOException {
+        try {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(in));
+        } catch (EnoughRowsException e) {
+            // Stopped early on purpose
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Failed to parse spreadsheet XML", e);
+        }
+    }
+
+    /**
+     * Collects cell values of the first rows of a worksheet part. Shared-string cells are recorded
+     * by index and resolved afterwards.
+     */
+    private static class SheetHandler extends DefaultHandler {
+        private static final String SHARED_PREFIX = "\u0000sst:";
+
+        private final int maxRows;
+        private final List<List<String>> rows = new ArrayList<>();
+        private List<String> currentRow;
+        private String cellType;
+        private boolean inValue;
+        private final StringBuilder value = new StringBuilder();
+        private int maxSharedString = -1;
+
+        SheetHandler(int maxRows) {
+            this.maxRows = maxRows;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attrs)
+                throws SAXException {
+            switch (localName) {
+                case "row" -> {
+                    if (rows.size() >= maxRows) {
+                        throw new EnoughRowsException();
+                    }
+                    currentRow = new ArrayList<>();
+                    rows.add(currentRow);
+                }
+                case "c" -> {
+                    cellType = attrs.getValue("t");
+                    value.setLength(0);
+                }
+                case "v", "t" -> inValue = true;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v", "t" -> inValue = false;
+                case "c" -> {
+                    if (currentRow != null) {
+                        currentRow.add(cellText());
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        private String cellText() {
+            String raw = value.toString();
+            if ("s".equals(cellType)) {
+                try {
+                    int index = Integer.parseInt(raw.trim());
+                    maxSharedString = Math.max(maxSharedString, index);
+                    return SHARED_PREFIX + index;
+                } catch (NumberFormatException e) {
+                    return " ";
+                }
+            } else if ("b".equals(cellType)) {
+                return "1".equals(raw) ? "TRUE" : "FALSE";
+            }
+            return raw;
+        }
+
+        void resolve(Map<Integer, String> strings) {
+            for (List<String> row : rows) {
+                for (int i = 0; i < row.size(); i++) {
+                    String cell = row.get(i);
+                    if (cell.startsWith(SHARED_PREFIX)) {
+                        int index = Integer.parseInt(cell.substring(SHARED_PREFIX.length()));
+                        row.set(i, strings.getOrDefault(index, " "));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads shared strings up to the highest index the preview rows refer to.
+     */
+    private static class SharedStringsHandler extends DefaultHandler {
+        private final int maxIndex;
+        private final Map<Integer, String> strings = new HashMap<>();
+        private final StringBuilder text = new StringBuilder();
+        private int index = -1;
+        private boolean inText;
+        private boolean inPhonetic;
+
+        SharedStringsHandler(int maxIndex) {
+            this.maxIndex = maxIndex;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attrs)
+                throws SAXException {
+            switch (localName) {
+                case "si" -> {
+                    if (++index > maxIndex) {
+                        throw new EnoughRowsException();
+                    }
+                    text.setLength(0);
+                }
+                // Phonetic guides (furigana) are not part of the displayed text
+                case "rPh" -> inPhonetic = true;
+                case "t" -> inText = !inPhonetic;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "si" -> strings.put(index, text.toString());
+                case "rPh" -> inPhonetic = false;
+                case "t" -> inText = false;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText) {
+                text.append(ch, start, length);
+            }
+        }
+    }
+
+    public List<List<String>> readXls(ThumbnailSource source, int maxRows) throws IOException {
+        XlsListener listener = new XlsListener(maxRows);
+        // Read-only and non-owning, so the source's channel stays open
+        try (POIFSFileSystem fs = source.channel() != null
+                ? new POIFSFileSystem(source.channel(), true, false)
+                : new POIFSFileSystem(source.openStream());
+                InputStream workbook = fs.createDocumentInputStream(workbookEntry(fs))) {
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(listener);
+            new HSSFEventFactory().abortableProcessEvents(request, workbook);
+        } catch (HSSFUserException e) {
+            throw new IOException("Failed to read XLS workbook", e);
+        }
+        return new ArrayList<>(listener.rows.values());
+    }
+
+    private static String workbookEntry(POIFSFileSystem fs) {
+        // Files written by very old Excel versions use "Book"
+        return fs.getRoot().hasEntry("Workbook") ? "Workbook" : "Book";
+    }
+
+    /**
+     * Collects the first rows of the first worksheet and aborts the record stream after that.
+     */
+    private static class XlsListener extends AbortableHSSFListener {
+        private static final short CONTINUE = 0;
+        private static final short ABORT = 1;
+
+        private final int maxRows;
+        private final TreeMap<Integer, List<String>> rows = new TreeMap<>();
+        private SSTRecord sst;
+        private int worksheets;
+        private FormulaRecord pendingFormula;
+
+        XlsListener(int maxRows) {
+            this.maxRows = maxRows;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            if (record instanceof BOFRecord bof) {
+                if (bof.getType() == BOFRecord.TYPE_WORKSHEET && ++worksheets > 1) {
+                    return ABORT;
+                }
+                return CONTINUE;
+            }
+            if (record instanceof SSTRecord sstRecord) {
+                sst = sstRecord;
+                return CONTINUE;
+            }
+            if (record instanceof EOFRecord && worksheets == 1) {
+                return ABORT;
+            }
+            if (worksheets != 1) {
+                return CONTINUE;
+            }
+            if (record instanceof StringRecord string && pendingFormula != null) {
+                add(pendingFormula, string.getString());
+                pendingFormula = null;
+                return CONTINUE;
+            }
+            if (!(record instanceof CellValueRecordInterface cell)) {
+                return CONTINUE;
+            }
+            if (cell.getRow() >= maxRows) {
+                return ABORT;
+            }
+            if (record instanceof LabelSSTRecord label) {
+                add(cell, sst == null ? " " : sst.getString(label.getSSTIndex()).getString());
+            } else if (record instanceof NumberRecord number) {
+                add(cell, NumberToTextConverter.toText(number.getValue()));
+            } else if (record instanceof LabelRecord label) {
+                add(cell, label.getValue());
+            } else if (record instanceof BoolErrRecord boolErr) {
+                add(cell, boolErr.isBoolean() ? Boolean.toString(boolErr.getBooleanValue())
+                        : "#ERR");
+            } else if (record instanceof FormulaRecord formula) {
+                CellType type = CellType.forInt(formula.getCachedResultType());
+                if (type == CellType.STRING) {
+                    // The cached text follows in a STRING record
+                    pendingFormula = formula;
+                } else if (type == CellType.NUMERIC) {
+                    add(cell, NumberToTextConverter.toText(formula.getValue()));
+                } else if (type == CellType.BOOLEAN) {
+                    add(cell, Boolean.toString(formula.getCachedBooleanValue()));
+                } else {
+                    add(cell, " ");
+                }
+            }
+            return CONTINUE;
+        }
+
+        private void add(CellValueRecordInterface cell, String text) {
+            rows.computeIfAbsent(cell.getRow(), r -> new ArrayList<>()).add(text);
+        }
+    }
+
+    public List<List<String>> readCsv(InputStream in, int maxRows) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        // Replace undecodable bytes instead of failing the whole preview
+        Reader decoder = new InputStreamReader(in,
+                csvCharset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE));
+        try (CSVReader reader = new CSVReader(new BoundedReader(decoder, MAX_CSV_CHARS))) {
+            String[] next;
+            while (rows.size() < maxRows && (next = reader.readNext()) != null) {
+                rows.add(List.of(next));
+            }
+        } catch (CsvValidationException e) {
+            throw new IOException("Failed to parse CSV preview", e);
+        }
+        return rows;
+    }
+
+    /**
+     * Reports end of input after a fixed number of characters.
+     */
+    private static class BoundedReader extends FilterReader {
+        private long remaining;
+
+        BoundedReader(Reader in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int c = super.read();
+            if (c != -1) {
+                remaining--;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+    }
+}
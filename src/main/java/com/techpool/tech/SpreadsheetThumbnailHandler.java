@@ -0,0 +1,76 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Data previews of the first rows of CSV, XLS and XLSX files.
+ */
+@Component
+public class SpreadsheetThumbnailHandler implements ThumbnailHandler {
+    private static final String CSV = "text/csv";
+    private static final String XLS = "application/vnd.ms-excel";
+    private static final String XLSX =
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final int PREVIEW_DATA_ROWS = 3;
+    // Rows are streamed, so sheet size does not matter; this covers parser buffers and the
+    // shared strings read up to the highest index used
+    private static final long STREAMING_BYTES = 8L * 1024 * 1024;
+
+    @Autowired
+    private SpreadsheetPreviewReader spreadsheetPreviewReader;
+
+    @Override
+    public boolean supports(String contentType) {
+        return contentType.equals(CSV) || contentType.equals(XLS) || contentType.equals(XLSX);
+    }
+
+    @Override
+    public ThumbnailExecutionEngine.WorkerPool workerPool() {
+        return ThumbnailExecutionEngine.WorkerPool.DOCUMENT;
+    }
+
+    @Override
+    public AdmissionController.Estimate estimateMemory(ThumbnailSource source,
+            List<ThumbnailRendition> renditions) throws IOException {
+        // Packages opened from memory are copied once more by POI
+        return AdmissionController.Estimate.fixed(STREAMING_BYTES
+                + (source.isInMemory() ? source.size() : 0));
+    }
+
+    @Override
+    public void generate(ThumbnailSource source, ThumbnailOutput output) throws IOException {
+        List<List<String>> rows;
+        if (source.contentType().equals(CSV)) {
+            try (InputStream in = source.openStream()) {
+                rows = spreadsheetPreviewReader.readCsv(in, PREVIEW_DATA_ROWS);
+            }
+        } else if (source.contentType().equals(XLS)) {
+            // Header plus data rows
+            rows = spreadsheetPreviewReader.readXls(source, PREVIEW_DATA_ROWS + 1);
+        } else {
+            rows = spreadsheetPreviewReader.readXlsx(source, PREVIEW_DATA_ROWS + 1);
+        }
+        output.saveDataPreview(rows.stream().map(row -> cleanLine(String.join(", ", row)))
+                .collect(Collectors.toList()));
+    }
+
+    private String cleanLine(String line) {
+        // 1. Trim and limit length
+        line = line.trim();
+        if (line.length() > 50) {
+            line = line.substring(0, 47) + "...";
+        }
+
+        // 2. Remove special characters that break rendering
+        line = line.replaceAll("[^\\x20-\\x7E]", "");
+
+        // 3. Replace multiple spaces with single space
+        return line.replaceAll("\\s+", " ");
+    }
+}
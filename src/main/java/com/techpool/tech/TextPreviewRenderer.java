@@ -0,0 +1,264 @@
+package com.techpool.tech;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.image.BufferedImage;
+import java.text.AttributedString;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Draws the text-based previews: plain text, titled document text, spreadsheet rows and the
+ * placeholder for files without a preview. Fonts and metrics are created once, text layout stops
+ * as soon as the canvas is full, and the static parts of the placeholder and data templates are
+ * drawn once per canvas size and copied for every preview.
+ */
+@Component
+public class TextPreviewRenderer {
+
+    private static final String NO_PREVIEW_TEXT = "No Preview\nAvailable";
+    private static final int MARGIN = 10;
+
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font BODY_FONT = new Font("Arial", Font.PLAIN, 12);
+    private static final Font NAME_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font NOTE_FONT = new Font("Arial", Font.ITALIC, 12);
+    private static final Font HEADER_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font DATA_FONT = new Font("Courier New", Font.PLAIN, 10);
+    private static final Font FOOTER_FONT = new Font("Arial", Font.PLAIN, 10);
+
+    private static final Color DATA_BACKGROUND = new Color(240, 240, 240);
+    private static final Color DATA_HEADER = new Color(0, 82, 165);
+    private static final Color ICON_FILL = new Color(200, 230, 255);
+
+    private enum Template {
+        PLACEHOLDER, DATA
+    }
+
+    private record TemplateKey(Template template, int width, int height) {
+    }
+
+    private final Map<TemplateKey, BufferedImage> templates = new ConcurrentHashMap<>();
+    private final Map<Font, FontMetrics> metrics = new ConcurrentHashMap<>();
+    // Only used to obtain metrics; never drawn to after creation
+    private final Graphics2D measuring;
+
+    public TextPreviewRenderer() {
+        measuring = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        applyHints(measuring);
+    }
+
+    /**
+     * Wrapped text on a light grey canvas, for sources whose content could not be rendered.
+     */
+    public BufferedImage renderText(String text, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            applyHints(g);
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillRect(0, 0, width, height);
+            g.setColor(Color.BLACK);
+            drawWrappedText(g, text, BODY_FONT, MARGIN, MARGIN, width - 2 * MARGIN,
+                    height - MARGIN);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Wrapped text under a title on a white canvas.
+     */
+    public BufferedImage renderDocument(String title, String text, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            applyHints(g);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setColor(Color.BLUE);
+            g.setFont(TITLE_FONT);
+            g.drawString(title, MARGIN, 20);
+            g.setColor(Color.BLACK);
+            drawWrappedText(g, text, BODY_FONT, MARGIN, 28, width - 2 * MARGIN,
+                    height - MARGIN);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Spreadsheet-style preview: the file name in a header bar, one row per line.
+     */
+    public BufferedImage renderData(String filename, List<String> lines, int width, int height) {
+        BufferedImage image = fromTemplate(Template.DATA, width, height, g -> {
+            g.setColor(DATA_BACKGROUND);
+            g.fillRect(0, 0, width, height);
+            g.setColor(DATA_HEADER);
+            g.fillRect(0, 0, width, 25);
+        });
+        Graphics2D g = image.createGraphics();
+        try {
+            applyHints(g);
+            g.setColor(Color.WHITE);
+            g.setFont(HEADER_FONT);
+            g.drawString(truncate(filename, 20), 5, 18);
+
+            g.setColor(Color.BLACK);
+            g.setFont(DATA_FONT);
+            int y = 40;
+            for (String line : lines) {
+                if (y > height - 15) {
+                    break;
+                }
+                g.drawString(line, 5, y);
+                y += 15;
+            }
+
+            g.setColor(Color.GRAY);
+            g.setFont(FOOTER_FONT);
+            g.drawString(lines.size() + " rows shown", 5, height - 5);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Generic file icon with the file name, for files that have no preview.
+     */
+    public BufferedImage renderPlaceholder(String filename, int width, int height) {
+        BufferedImage image = fromTemplate(Template.PLACEHOLDER, width, height, g -> {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setColor(Color.GRAY);
+            g.drawRect(0, 0, width - 1, height - 1);
+            g.setColor(ICON_FILL);
+            g.fillRect(width / 4, height / 4, width / 2, height / 3);
+            g.setColor(Color.BLUE);
+            g.drawRect(width / 4, height / 4, width / 2, height / 3);
+            g.setFont(NOTE_FONT);
+            FontMetrics note = metrics(NOTE_FONT);
+            int y = height * 4 / 5;
+            for (String line : NO_PREVIEW_TEXT.split("\n")) {
+                g.drawString(line, (width - note.stringWidth(line)) / 2, y);
+                y += note.getHeight();
+            }
+        });
+        Graphics2D g = image.createGraphics();
+        try {
+            applyHints(g);
+            g.setColor(Color.BLUE);
+            g.setFont(NAME_FONT);
+            FontMetrics name = metrics(NAME_FONT);
+            String text = fitWidth(filename, name, width - 20);
+            g.drawString(text, (width - name.stringWidth(text)) / 2, height * 3 / 4);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private BufferedImage fromTemplate(Template template, int width, int height,
+            Consumer<Graphics2D> painter) {
+        BufferedImage cached = templates.computeIfAbsent(new TemplateKey(template, width, height),
+                key -> {
+                    BufferedImage image =
+                            new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                    Graphics2D g = image.createGraphics();
+                    try {
+                        applyHints(g);
+                        painter.accept(g);
+                    } finally {
+                        g.dispose();
+                    }
+                    return image;
+                });
+        // A raster copy is a plain array copy, much cheaper than repainting
+        return new BufferedImage(cached.getColorModel(), cached.copyData(null), false, null);
+    }
+
+    /**
+     * Lays out {@code text} paragraph by paragraph inside the box and stops at the bottom edge.
+     * The input is cut to what could possibly fit before any layout work is done.
+     */
+    private void drawWrappedText(Graphics2D g, String text, Font font, int x, int top,
+            int maxWidth, int bottom) {
+        if (text == null || text.isEmpty() || maxWidth <= 0) {
+            return;
+        }
+        FontMetrics fm = metrics(font);
+        int lineHeight = Math.max(1, fm.getHeight());
+        int maxLines = Math.max(1, (bottom - top) / lineHeight);
+        // Narrow glyphs give an upper bound on how many characters a line can hold
+        int budget = maxLines * (maxWidth / Math.max(1, fm.charWidth('i')) + 1);
+        String visible = text.length() > budget ? text.substring(0, budget) : text;
+        // Word documents separate paragraphs with \r and use other control characters for fields
+        visible = visible.replace("\r\n", "\n").replace('\r', '\n')
+                .replaceAll("[\\p{Cntrl}&&[^\n]]", " ");
+
+        FontRenderContext frc = g.getFontRenderContext();
+        float y = top;
+        for (String paragraph : visible.split("\n", -1)) {
+            if (paragraph.isBlank()) {
+                y += lineHeight;
+            } else {
+                AttributedString styled = new AttributedString(paragraph);
+                styled.addAttribute(TextAttribute.FONT, font);
+                LineBreakMeasurer measurer = new LineBreakMeasurer(styled.getIterator(), frc);
+                while (measurer.getPosition() < paragraph.length()) {
+                    TextLayout layout = measurer.nextLayout(maxWidth);
+                    if (y + layout.getAscent() + layout.getDescent() > bottom) {
+                        return;
+                    }
+                    y += layout.getAscent();
+                    layout.draw(g, x, y);
+                    y += layout.getDescent() + layout.getLeading();
+                }
+            }
+            if (y + lineHeight > bottom) {
+                return;
+            }
+        }
+    }
+
+    private FontMetrics metrics(Font font) {
+        return metrics.computeIfAbsent(font, f -> {
+            synchronized (measuring) {
+                return measuring.getFontMetrics(f);
+            }
+        });
+    }
+
+    private static String fitWidth(String text, FontMetrics fm, int maxWidth) {
+        if (fm.stringWidth(text) <= maxWidth) {
+            return text;
+        }
+        int end = text.length();
+        while (end > 3 && fm.stringWidth(text.substring(0, end) + "...") > maxWidth) {
+            end--;
+        }
+        return text.substring(0, end) + "...";
+    }
+
+    private static String truncate(String text, int maxLength) {
+        return text.length() > maxLength ? text.substring(0, maxLength - 3) + "..." : text;
+    }
+
+    private static void applyHints(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    }
+}
@@ -0,0 +1,142 @@
+package com.techpool.tech;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Generates thumbnails for an explicit list of files, reporting each one as soon as it is done.
+ */
+@Service
+public class ThumbnailBatchService {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailBatchService.class);
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private ThumbnailExecutionEngine executionEngine;
+
+    @Autowired
+    private AllowedPaths allowedPaths;
+
+    // Files of one batch in flight at once; the worker pools still cap the total across batches
+    @Value("${thumbnail.batch.concurrency:8}")
+    private int concurrency;
+
+    /**
+     * One file to thumbnail. Renditions default to the configured ones; {@code renditions} picks
+     * some of them by name, comma-separated, {@code w}/{@code h}/{@code format} a single size as
+     * on GET.
+     */
+    public record Item(String path, String renditions, Integer w, Integer h, String format) {
+    }
+
+    public record Result(String path, ThumbnailJob.FileStatus status, List<String> outputs,
+            long durationMs, String error) {
+    }
+
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(Result result) throws IOException;
+    }
+
+    /**
+     * Runs every item and hands results to {@code sink} in completion order, one at a time. Stops
+     * submitting once the sink fails, e.g. because the client went away, and rethrows that error
+     * after the files already running have finished.
+     */
+    public void run(List<Item> items, ResultSink sink) throws IOException, InterruptedException {
+        run(items, ThumbnailExecutionEngine.Lane.BULK, sink);
+    }
+
+    public void run(List<Item> items, ThumbnailExecutionEngine.Lane lane, ResultSink sink)
+            throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        ThumbnailExecutionEngine.Batch batch = executionEngine.newBatch(lane);
+        Object lock = new Object();
+        IOException[] sinkError = new IOException[1];
+        ResultSink guarded = result -> {
+            synchronized (lock) {
+                if (sinkError[0] == null) {
+                    try {
+                        sink.accept(result);
+                    } catch (IOException e) {
+                        sinkError[0] = e;
+                    }
+                }
+            }
+        };
+        try {
+            for (Item item : items) {
+                synchronized (lock) {
+                    if (sinkError[0] != null) {
+                        break;
+                    }
+                }
+                permits.acquire();
+                submit(item, batch, guarded, permits);
+            }
+        } finally {
+            batch.await();
+        }
+        if (sinkError[0] != null) {
+            throw sinkError[0];
+        }
+    }
+
+    private void submit(Item item, ThumbnailExecutionEngine.Batch batch, ResultSink sink,
+            Semaphore permits) throws IOException, InterruptedException {
+        String path = item.path();
+        File file;
+        List<ThumbnailRendition> renditions;
+        try {
+            if (path == null || path.isBlank()) {
+                throw new IllegalArgumentException("Missing path");
+            }
+            file = allowedPaths.resolve(path);
+            if (!file.isFile()) {
+                throw new IllegalArgumentException("No such file: " + path);
+            }
+            renditions = resolveRenditions(item);
+        } catch (IllegalArgumentException | SecurityException | IOException e) {
+            permits.release();
+            sink.accept(new Result(path, ThumbnailJob.FileStatus.FAILED, List.of(), 0,
+                    e.getMessage()));
+            return;
+        }
+        try {
+            thumbnailService.submitFile(file, renditions, batch, (result, written) -> {
+                permits.release();
+                try {
+                    sink.accept(new Result(result.path(), result.status(),
+                            written.stream().map(Path::toString).toList(),
+                            result.durationMs(), result.message()));
+                } catch (IOException e) {
+                    // The guarded sink keeps write errors to itself
+                    logger.debug("Failed to report result for {}", result.path(), e);
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private List<ThumbnailRendition> resolveRenditions(Item item) {
+        if (item.renditions() != null && !item.renditions().isBlank()) {
+            return thumbnailService.selectRenditions(item.renditions());
+        }
+        if (item.w() != null || item.h() != null || item.format() != null) {
+            return List.of(thumbnailService.resolveRendition(item.w(), item.h(), item.format()));
+        }
+        return thumbnailService.getRenditions();
+    }
+}
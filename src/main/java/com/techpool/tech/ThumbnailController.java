@@ -1,35 +1,384 @@
 package com.techpool.tech;
 
 import java.io.File;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/api/thumbnail")
 public class ThumbnailController {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private ThumbnailJobService jobService;
 
     @Autowired
     private ThumbnailService thumbnailService;
 
-    @PostMapping("/generate")
-    public ResponseEntity<String> generate(@RequestParam String path) {
+    @Autowired
+    private UploadSpooler uploadSpooler;
+
+    @Autowired
+    private ThumbnailBatchService batchService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ThumbnailPackStore packStore;
+
+    @Autowired
+    private AllowedPaths allowedPaths;
+
+    // Thumbnail URLs do not change with the source, so this bounds how stale a cached copy can get
+    @Value("${thumbnail.http.cache-max-age-seconds:2592000}")
+    private long cacheMaxAgeSeconds;
+
+    @Value("${thumbnail.http.generate-timeout-seconds:60}")
+    private long generateTimeoutSeconds;
+
+    @Value("${thumbnail.batch.max-items:10000}")
+    private int batchMaxItems;
+
+    /**
+     * Serves the thumbnail of one file, generating it first when it is missing or stale.
+     * Validators are derived from the source file, so revalidation never touches the thumbnail.
+     * Sizes other than the configured renditions are rendered in memory and never stored, so
+     * clients cannot fill the disk with one file per size they ask for.
+     */
+    @GetMapping
+    public void getThumbnail(@RequestParam String path,
+            @RequestParam(required = false) Integer w, @RequestParam(required = false) Integer h,
+            @RequestParam(required = false) String format,
+            @RequestParam(required = false) String priority, ServletWebRequest webRequest,
+            HttpServletResponse response) throws IOException {
+        ThumbnailExecutionEngine.Lane lane =
+                resolveLane(priority, ThumbnailExecutionEngine.Lane.INTERACTIVE);
+        File source = toFile(path);
+        if (!source.isFile()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No such file: " + path);
+        }
+        ThumbnailRendition rendition = resolveRendition(w, h, format);
+        long lastModified = source.lastModified();
+        String etag = "\"" + Long.toHexString(lastModified) + "-"
+                + Long.toHexString(source.length()) + "-"
+                + Integer.toHexString(rendition.toString().hashCode()) + "\"";
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        if (!thumbnailService.isConfigured(rendition)) {
+            ThumbnailService.EncodedThumbnail thumbnail =
+                    await(thumbnailService.render(source, rendition, lane), response);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl());
+            response.setContentType(thumbnail.format().equalsIgnoreCase("png")
+                    ? MediaType.IMAGE_PNG_VALUE : MediaType.IMAGE_JPEG_VALUE);
+            response.setContentLength(thumbnail.data().length);
+            response.getOutputStream().write(thumbnail.data());
+            return;
+        }
+
+        if (thumbnailService.usesPackStore()) {
+            ThumbnailPackStore.Thumbnail thumbnail =
+                    await(thumbnailService.getPackedThumbnail(source, rendition, lane),
+                            response);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl());
+            response.setContentType(thumbnail.format().equalsIgnoreCase("png")
+                    ? MediaType.IMAGE_PNG_VALUE : MediaType.IMAGE_JPEG_VALUE);
+            sendBuffer(response, thumbnail.data());
+            return;
+        }
+        Path thumbnail = await(thumbnailService.getThumbnail(source, rendition, lane), response);
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl());
+        response.setContentType(thumbnail.getFileName().toString().endsWith(".png")
+                ? MediaType.IMAGE_PNG_VALUE : MediaType.IMAGE_JPEG_VALUE);
+        sendFile(webRequest.getRequest(), response, thumbnail);
+    }
+
+    /**
+     * Thumbnails an uploaded file and returns the image. Nothing is stored; small uploads never
+     * touch the disk, and larger ones are read from the file the container spooled them to.
+     */
+    @PostMapping(path = "/render", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<byte[]> renderUpload(@RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) Integer w, @RequestParam(required = false) Integer h,
+            @RequestParam(required = false) String format,
+            @RequestParam(required = false) String priority, HttpServletResponse response)
+            throws IOException {
+        ThumbnailRendition rendition = resolveRendition(w, h, format);
+        ThumbnailExecutionEngine.Lane lane =
+                resolveLane(priority, ThumbnailExecutionEngine.Lane.INTERACTIVE);
+        return render(uploadSpooler.open(file), rendition, lane, response);
+    }
+
+    // Same as the multipart form, for clients that post the file as the raw request body. It has
+    // no consumes condition so that multipart requests go to the more specific mapping above. A
+    // form-encoded body would be consumed as request parameters, so it is not accepted here.
+    @PostMapping(path = "/render")
+    public ResponseEntity<byte[]> renderBody(@RequestParam(defaultValue = "upload") String name,
+            @RequestParam(required = false) Integer w, @RequestParam(required = false) Integer h,
+            @RequestParam(required = false) String format,
+            @RequestParam(required = false) String priority, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT)
+                .startsWith(MediaType.APPLICATION_FORM_URLENCODED_VALUE)) {
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                    "Post the file as multipart form data or as the raw request body");
+        }
+        ThumbnailRendition rendition = resolveRendition(w, h, format);
+        ThumbnailExecutionEngine.Lane lane =
+                resolveLane(priority, ThumbnailExecutionEngine.Lane.INTERACTIVE);
+        return render(uploadSpooler.spool(name, request.getInputStream()), rendition, lane,
+                response);
+    }
+
+    private ResponseEntity<byte[]> render(ThumbnailSource source, ThumbnailRendition rendition,
+            ThumbnailExecutionEngine.Lane lane, HttpServletResponse response) {
+        ThumbnailService.EncodedThumbnail thumbnail =
+                await(thumbnailService.render(source, rendition, lane), response);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .contentType(thumbnail.format().equalsIgnoreCase("png")
+                        ? MediaType.IMAGE_PNG : MediaType.IMAGE_JPEG)
+                .body(thumbnail.data());
+    }
+
+    private ThumbnailRendition resolveRendition(Integer w, Integer h, String format) {
+        try {
+            return thumbnailService.resolveRendition(w, h, format);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // "interactive" or "bulk"; lets a client move a request out of the lane it would default to
+    private ThumbnailExecutionEngine.Lane resolveLane(String priority,
+            ThumbnailExecutionEngine.Lane fallback) {
+        try {
+            return ThumbnailExecutionEngine.Lane.parse(priority, fallback);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // Waits for a generation, mapping a full pool or a slow generation to 503
+    private <T> T await(CompletableFuture<T> future, HttpServletResponse response) {
+        try {
+            return future.get(generateTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Thumbnail workers are busy, retry later");
+            }
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    "Failed to generate thumbnail", e.getCause());
+        } catch (TimeoutException e) {
+            // Generation carries on; a retry will find the thumbnail or join the same generation
+            response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Thumbnail is still being generated, retry later");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted");
+        }
+    }
+
+    private String cacheControl() {
+        return CacheControl.maxAge(cacheMaxAgeSeconds, TimeUnit.SECONDS).cachePublic()
+                .getHeaderValue();
+    }
+
+    // Writes a mapped slice of a pack segment. No sendfile here: compaction may delete the file
+    private void sendBuffer(HttpServletResponse response, ByteBuffer data) throws IOException {
+        response.setContentLength(data.remaining());
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        while (data.hasRemaining()) {
+            out.write(data);
+        }
+    }
+
+    // Lets Tomcat sendfile() the thumbnail when it can, else copies it through a channel
+    private void sendFile(HttpServletRequest request, HttpServletResponse response, Path file)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            response.setContentLengthLong(size);
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, size);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    // Spring has already decoded the parameter; decoding again would mangle '+' and '%'
+    private File toFile(String path) {
         try {
-            // Decode URL and handle spaces properly
-            String decodedPath = URLDecoder.decode(path, StandardCharsets.UTF_8);
             // Convert to Windows-style path if needed
-            decodedPath = decodedPath.replace('/', File.separatorChar);
+            return allowedPaths.resolve(path.replace('/', File.separatorChar));
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, e.getMessage());
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid path: " + path);
+        }
+    }
 
-            File input = new File(decodedPath);
-            thumbnailService.processPath(input);
-            return ResponseEntity.ok("Thumbnails generated successfully.");
+    @PostMapping("/generate")
+    public ResponseEntity<?> generate(@RequestParam String path,
+            @RequestParam(required = false) String priority) {
+        File input = toFile(path);
+        if (!input.exists()) {
+            // Would otherwise run as a job that completes with nothing in it
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "No such file or directory: " + path);
+        }
+        // A single file is usually wanted now; a directory is a crawl
+        ThumbnailExecutionEngine.Lane lane = resolveLane(priority, input.isFile()
+                ? ThumbnailExecutionEngine.Lane.INTERACTIVE : ThumbnailExecutionEngine.Lane.BULK);
+        try {
+            ThumbnailJob job = jobService.submit(input, lane);
+            return ResponseEntity.accepted()
+                    .header(HttpHeaders.LOCATION, "/api/thumbnail/jobs/" + job.getId())
+                    .body(job);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body("Error: job queue is full, retry later");
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body("Error: " + e.getMessage());
         }
     }
+
+    /**
+     * Generates thumbnails for a list of files, posted as NDJSON or a JSON array of
+     * {@link ThumbnailBatchService.Item}s. One NDJSON result line is streamed back per file as it
+     * finishes, in completion order.
+     */
+    @PostMapping(path = "/batch",
+            consumes = { MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE },
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void batch(@RequestParam(required = false) String priority,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ThumbnailExecutionEngine.Lane lane =
+                resolveLane(priority, ThumbnailExecutionEngine.Lane.BULK);
+        List<ThumbnailBatchService.Item> items;
+        try (MappingIterator<ThumbnailBatchService.Item> it = objectMapper
+                .readerFor(ThumbnailBatchService.Item.class)
+                .readValues(request.getInputStream())) {
+            items = it.readAll();
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Invalid batch: " + e.getOriginalMessage());
+        }
+        if (items.size() > batchMaxItems) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "At most " + batchMaxItems + " files per batch");
+        }
+        // An unknown rendition is a malformed request, not a failure of one file
+        for (ThumbnailBatchService.Item item : items) {
+            if (item.renditions() != null && !item.renditions().isBlank()) {
+                try {
+                    thumbnailService.selectRenditions(item.renditions());
+                } catch (IllegalArgumentException e) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+                }
+            }
+        }
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try {
+            batchService.run(items, lane, result -> {
+                out.write(objectMapper.writeValueAsBytes(result));
+                out.write('\n');
+                // Push each line out now rather than when the response buffer fills
+                out.flush();
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Reclaims space held by thumbnails of deleted or changed sources in the pack store
+    @PostMapping("/store/compact")
+    public ResponseEntity<Map<String, Object>> compactStore() throws IOException {
+        if (!packStore.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Pack store is not enabled");
+        }
+        long before = packStore.getTotalBytes();
+        packStore.compact();
+        return ResponseEntity.ok(Map.of("bytesBefore", before,
+                "bytesAfter", packStore.getTotalBytes()));
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ThumbnailJob> getJob(@PathVariable String id) {
+        return ResponseEntity.of(jobService.getJob(id));
+    }
+
+    @GetMapping("/jobs/{id}/results")
+    public ResponseEntity<List<ThumbnailJob.FileResult>> getJobResults(@PathVariable String id,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = Math.min(Math.max(limit, 0), 1000);
+        return ResponseEntity.of(jobService.getJob(id)
+                .map(job -> job.getResults(Math.max(offset, 0), pageSize)));
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String id) {
+        if (jobService.getJob(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean cancelled = jobService.cancel(id);
+        return ResponseEntity.ok(Map.of("id", id, "cancelled", cancelled));
+    }
 }
@@ -0,0 +1,454 @@
+package com.techpool.tech;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs per-file thumbnail work on dedicated pools, one per kind of workload, so a backlog of slow
+ * documents or videos cannot starve image work. Each pool has its own thread count and queue
+ * depth; submitters block while a pool is saturated, which throttles directory traversal instead
+ * of buffering the whole tree in memory.
+ * <p>
+ * Within a pool, work runs in one of two lanes. Interactive tasks are taken before any queued
+ * bulk task, and bulk tasks never occupy more than the pool's bulk threads, so some workers are
+ * always free for interactive requests while a crawl runs. Each lane has its own queue limit,
+ * so a full bulk lane does not turn interactive requests away.
+ */
+@Component
+public class ThumbnailExecutionEngine {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailExecutionEngine.class);
+
+    public enum WorkerPool {
+        // CPU-bound image decode and resize
+        IMAGE("image"),
+        // Heavy PDF/DOCX/spreadsheet rendering
+        DOCUMENT("document"),
+        // Mostly waiting on external ffmpeg processes
+        VIDEO("video");
+
+        private final String key;
+
+        WorkerPool(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    public enum Lane {
+        // Single files someone is waiting for
+        INTERACTIVE("interactive"),
+        // Directory crawls, batches and watch-mode catch-up
+        BULK("bulk");
+
+        private final String key;
+
+        Lane(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        // Lane for a request's priority parameter; null or blank gives the fallback
+        public static Lane parse(String priority, Lane fallback) {
+            if (priority == null || priority.isBlank()) {
+                return fallback;
+            }
+            for (Lane lane : values()) {
+                if (lane.key.equals(priority.trim().toLowerCase(Locale.ROOT))) {
+                    return lane;
+                }
+            }
+            throw new IllegalArgumentException("Unknown priority: " + priority);
+        }
+    }
+
+    private final Map<WorkerPool, ThreadPoolExecutor> executors = new EnumMap<>(WorkerPool.class);
+    private final Map<WorkerPool, LaneQueue> queues = new EnumMap<>(WorkerPool.class);
+    private final Map<WorkerPool, Map<Lane, Semaphore>> capacity =
+            new EnumMap<>(WorkerPool.class);
+
+    public ThumbnailExecutionEngine(Environment env) {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        configure(env, WorkerPool.IMAGE, cpus, 256);
+        configure(env, WorkerPool.DOCUMENT, Math.max(1, cpus / 2), 64);
+        configure(env, WorkerPool.VIDEO, 4, 64);
+    }
+
+    private void configure(Environment env, WorkerPool pool, int defaultThreads,
+            int defaultQueue) {
+        String prefix = "thumbnail.executor." + pool.getKey();
+        int threads = env.getProperty(prefix + ".threads", Integer.class, defaultThreads);
+        int queueCapacity =
+                env.getProperty(prefix + ".queue-capacity", Integer.class, defaultQueue);
+        // A quarter of the workers is kept for interactive work, unless there is only one
+        int bulkThreads = env.getProperty(prefix + ".bulk-threads", Integer.class,
+                threads > 1 ? threads - Math.max(1, threads / 4) : 1);
+        bulkThreads = Math.max(1, Math.min(threads, bulkThreads));
+        int interactiveQueue =
+                env.getProperty(prefix + ".interactive-queue-capacity", Integer.class, 64);
+
+        AtomicInteger counter = new AtomicInteger();
+        LaneQueue queue = new LaneQueue(bulkThreads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L,
+                TimeUnit.MILLISECONDS, queue, r -> {
+                    Thread t = new Thread(r,
+                            "thumbnail-" + pool.getKey() + "-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // Started up front so every task goes through the queue and its lane rules
+        executor.prestartAllCoreThreads();
+        executors.put(pool, executor);
+        queues.put(pool, queue);
+        // Running plus queued tasks; the semaphores are what enforce the queue-depth limits
+        Map<Lane, Semaphore> lanes = new EnumMap<>(Lane.class);
+        lanes.put(Lane.INTERACTIVE, new Semaphore(threads + interactiveQueue));
+        lanes.put(Lane.BULK, new Semaphore(bulkThreads + queueCapacity));
+        capacity.put(pool, lanes);
+        logger.info("Thumbnail {} pool: {} threads ({} for bulk work), queue capacity {}",
+                pool.getKey(), threads, bulkThreads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    public int getQueueDepth(WorkerPool pool) {
+        return queues.get(pool).size();
+    }
+
+    public int getQueueDepth(WorkerPool pool, Lane lane) {
+        return queues.get(pool).size(lane);
+    }
+
+    public int getActiveCount(WorkerPool pool) {
+        return executors.get(pool).getActiveCount();
+    }
+
+    /**
+     * Runs a single task on the given pool without waiting for capacity; throws
+     * {@link RejectedExecutionException} when the lane is saturated so interactive callers can
+     * shed load instead of queueing.
+     */
+    public <T> CompletableFuture<T> submit(WorkerPool pool, Callable<T> task) {
+        return submit(pool, Lane.INTERACTIVE, task);
+    }
+
+    public <T> CompletableFuture<T> submit(WorkerPool pool, Lane lane, Callable<T> task) {
+        Semaphore permits = capacity.get(pool).get(lane);
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("Thumbnail " + pool.getKey() + " pool is full");
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executors.get(pool).execute(new LaneTask(lane, queues.get(pool), () -> {
+                try {
+                    result.complete(task.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    permits.release();
+                }
+            }));
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return result;
+    }
+
+    public Batch newBatch() {
+        return new Batch(Lane.BULK);
+    }
+
+    public Batch newBatch(Lane lane) {
+        return new Batch(lane);
+    }
+
+    /**
+     * A group of submitted tasks that can be awaited together, without keeping a future per file.
+     */
+    public class Batch {
+        private final Object lock = new Object();
+        private final Lane lane;
+        private int pending;
+
+        private Batch(Lane lane) {
+            this.lane = lane;
+        }
+
+        public Lane getLane() {
+            return lane;
+        }
+
+        /**
+         * Submits a task to the given pool, blocking while this batch's lane is at capacity.
+         */
+        public void submit(WorkerPool pool, Runnable task) throws InterruptedException {
+            Semaphore permits = capacity.get(pool).get(lane);
+            permits.acquire();
+            synchronized (lock) {
+                pending++;
+            }
+            try {
+                executors.get(pool).execute(new LaneTask(lane, queues.get(pool), () -> {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Thumbnail task failed on {} pool", pool.getKey(), e);
+                    } finally {
+                        permits.release();
+                        taskDone();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                permits.release();
+                taskDone();
+                throw e;
+            }
+        }
+
+        private void taskDone() {
+            synchronized (lock) {
+                if (--pending == 0) {
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        public void await() throws InterruptedException {
+            synchronized (lock) {
+                while (pending > 0) {
+                    lock.wait();
+                }
+            }
+        }
+    }
+
+    // A task tagged with its lane; a bulk task frees its bulk slot when it ends
+    private record LaneTask(Lane lane, LaneQueue queue, Runnable task) implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                if (lane == Lane.BULK) {
+                    queue.bulkDone();
+                }
+            }
+        }
+    }
+
+    /**
+     * Work queue of one pool. Hands out interactive tasks first, and bulk tasks only while fewer
+     * than the pool's bulk threads are running one. Unbounded; lane capacity is limited by the
+     * submitters' semaphores.
+     */
+    private static final class LaneQueue extends AbstractQueue<Runnable>
+            implements BlockingQueue<Runnable> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        private final ArrayDeque<Runnable> interactive = new ArrayDeque<>();
+        private final ArrayDeque<Runnable> bulk = new ArrayDeque<>();
+        private final int bulkThreads;
+        private int bulkRunning;
+
+        LaneQueue(int bulkThreads) {
+            this.bulkThreads = bulkThreads;
+        }
+
+        void bulkDone() {
+            lock.lock();
+            try {
+                bulkRunning--;
+                ready.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size(Lane lane) {
+            lock.lock();
+            try {
+                return lane == Lane.BULK ? bulk.size() : interactive.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Next task this worker may run, under the lock
+        private Runnable next() {
+            Runnable task = interactive.poll();
+            if (task == null && bulkRunning < bulkThreads) {
+                task = bulk.poll();
+                if (task != null) {
+                    bulkRunning++;
+                }
+            }
+            return task;
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            lock.lock();
+            try {
+                boolean isBulk = task instanceof LaneTask laneTask && laneTask.lane() == Lane.BULK;
+                (isBulk ? bulk : interactive).add(task);
+                ready.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+            return offer(task);
+        }
+
+        @Override
+        public void put(Runnable task) {
+            offer(task);
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                Runnable task;
+                while ((task = next()) == null) {
+                    ready.await();
+                }
+                return task;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                Runnable task;
+                while ((task = next()) == null) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = ready.awaitNanos(nanos);
+                }
+                return task;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable poll() {
+            lock.lock();
+            try {
+                return next();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable peek() {
+            lock.lock();
+            try {
+                return interactive.isEmpty() ? bulk.peek() : interactive.peek();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean remove(Object task) {
+            lock.lock();
+            try {
+                return interactive.remove(task) || bulk.remove(task);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            lock.lock();
+            try {
+                return interactive.size() + bulk.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Integer.MAX_VALUE;
+        }
+
+        // Only used on shutdown, so bulk limits do not apply
+        @Override
+        public int drainTo(Collection<? super Runnable> target) {
+            return drainTo(target, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> target, int maxElements) {
+            lock.lock();
+            try {
+                int n = 0;
+                while (n < maxElements && (!interactive.isEmpty() || !bulk.isEmpty())) {
+                    target.add(interactive.isEmpty() ? bulk.poll() : interactive.poll());
+                    n++;
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // A snapshot; the executor only iterates to purge cancelled tasks
+        @Override
+        public Iterator<Runnable> iterator() {
+            lock.lock();
+            try {
+                List<Runnable> all = new ArrayList<>(interactive);
+                all.addAll(bulk);
+                return all.iterator();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
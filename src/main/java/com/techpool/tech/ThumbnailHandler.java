@@ -0,0 +1,51 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Generates thumbnails for one family of content types. Built-in handlers are Spring beans;
+ * additional handlers can be plugged in as beans or listed in
+ * {@code META-INF/services/com.techpool.tech.ThumbnailHandler}, in which case they are created
+ * with their no-argument constructor.
+ */
+public interface ThumbnailHandler {
+
+    boolean supports(String contentType);
+
+    /**
+     * Short name for configuration such as deadlines: the class name without
+     * {@code ThumbnailHandler}, e.g. {@code pdf} for {@code PdfThumbnailHandler}.
+     */
+    default String key() {
+        String name = getClass().getSimpleName().replace("ThumbnailHandler", "");
+        return (name.isEmpty() ? getClass().getSimpleName() : name).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Pool whose workload matches this handler. Defaults to the image pool, which suits anything
+     * that is decoded in-process and CPU bound.
+     */
+    default ThumbnailExecutionEngine.WorkerPool workerPool() {
+        return ThumbnailExecutionEngine.WorkerPool.IMAGE;
+    }
+
+    /**
+     * Estimated peak heap of generating {@code source}, checked against the memory budget before
+     * {@link #generate} runs, so it should only read headers. The default assumes the source is
+     * held in memory a few times over, with no way to reduce that.
+     */
+    default AdmissionController.Estimate estimateMemory(ThumbnailSource source,
+            List<ThumbnailRendition> renditions) throws IOException {
+        return AdmissionController.Estimate.fixed(source.size() * 4);
+    }
+
+    /**
+     * Renders the source and writes every rendition through {@code output}. An
+     * {@link IOException} is retried only when it looks transient, such as a network file system
+     * error; otherwise the service falls back to a placeholder straight away. The handler is
+     * interrupted and abandoned once it runs past its deadline.
+     */
+    void generate(ThumbnailSource source, ThumbnailOutput output) throws IOException;
+}
@@ -0,0 +1,41 @@
+package com.techpool.tech;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maps content types to the handler that generates their thumbnails. Handlers found through
+ * {@link ServiceLoader} are consulted before the built-in beans, so a plugin can take over a type
+ * the service already handles. Lookups are cached per content type.
+ */
+@Component
+public class ThumbnailHandlerRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailHandlerRegistry.class);
+
+    private final List<ThumbnailHandler> handlers = new ArrayList<>();
+    private final Map<String, Optional<ThumbnailHandler>> byType = new ConcurrentHashMap<>();
+
+    public ThumbnailHandlerRegistry(List<ThumbnailHandler> beans) {
+        for (ThumbnailHandler plugin : ServiceLoader.load(ThumbnailHandler.class)) {
+            logger.info("Registered thumbnail handler plugin {}", plugin.getClass().getName());
+            handlers.add(plugin);
+        }
+        handlers.addAll(beans);
+    }
+
+    public Optional<ThumbnailHandler> find(String contentType) {
+        return byType.computeIfAbsent(contentType, type -> handlers.stream()
+                .filter(handler -> handler.supports(type)).findFirst());
+    }
+
+    public List<ThumbnailHandler> getHandlers() {
+        return List.copyOf(handlers);
+    }
+}
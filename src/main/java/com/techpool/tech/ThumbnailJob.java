@@ -0,0 +1,185 @@
+package com.techpool.tech;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the progress of one thumbnail request: counters, per-file results and cancellation.
+ */
+public class ThumbnailJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    public enum FileStatus {
+        GENERATED, FALLBACK, SKIPPED, FAILED
+    }
+
+    public record FileResult(String path, FileStatus status, String message, long durationMs) {
+    }
+
+    // Keep memory bounded for huge trees; counters stay exact
+    private static final int MAX_RETAINED_RESULTS = 10_000;
+
+    private final String id = UUID.randomUUID().toString();
+    private final String path;
+    private final ThumbnailExecutionEngine.Lane lane;
+    private final Instant createdAt = Instant.now();
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile String error;
+    private volatile boolean cancelRequested;
+    private volatile Future<?> future;
+
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger retainedResults = new AtomicInteger();
+    private final ConcurrentLinkedQueue<FileResult> results = new ConcurrentLinkedQueue<>();
+
+    public ThumbnailJob(String path) {
+        this(path, ThumbnailExecutionEngine.Lane.BULK);
+    }
+
+    public ThumbnailJob(String path, ThumbnailExecutionEngine.Lane lane) {
+        this.path = path;
+        this.lane = lane;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    ThumbnailExecutionEngine.Lane getLane() {
+        return lane;
+    }
+
+    // Lane key, as reported in the job's JSON
+    public String getPriority() {
+        return lane.getKey();
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED
+                || status == Status.CANCELLED;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void markFinished(Throwable failure) {
+        finishedAt = Instant.now();
+        if (cancelRequested) {
+            status = Status.CANCELLED;
+        } else if (failure != null) {
+            error = failure.getMessage();
+            status = Status.FAILED;
+        } else {
+            status = Status.COMPLETED;
+        }
+    }
+
+    public boolean cancel() {
+        if (isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        Future<?> f = future;
+        if (f != null && f.cancel(false)) {
+            // Never started; nothing else will finish it
+            markFinished(null);
+        }
+        return true;
+    }
+
+    void fileStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    void fileFinished(String filePath, FileStatus fileStatus, String message, long durationMs) {
+        inFlight.decrementAndGet();
+        if (fileStatus == FileStatus.FAILED) {
+            failed.incrementAndGet();
+        } else {
+            completed.incrementAndGet();
+            if (fileStatus == FileStatus.SKIPPED) {
+                skipped.incrementAndGet();
+            }
+        }
+        if (retainedResults.incrementAndGet() <= MAX_RETAINED_RESULTS) {
+            results.add(new FileResult(filePath, fileStatus, message, durationMs));
+        }
+    }
+
+    public List<FileResult> getResults(int offset, int limit) {
+        List<FileResult> page = new ArrayList<>();
+        int index = 0;
+        for (FileResult result : results) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (index++ >= offset) {
+                page.add(result);
+            }
+        }
+        return page;
+    }
+}
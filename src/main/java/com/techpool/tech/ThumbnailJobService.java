@@ -0,0 +1,145 @@
+package com.techpool.tech;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs thumbnail requests in the background so HTTP threads return immediately. Jobs wait in a
+ * bounded queue; once it is full new submissions are rejected instead of piling up. Interactive
+ * jobs have workers of their own, so they never wait for a long crawl to finish.
+ */
+@Service
+public class ThumbnailJobService {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailJobService.class);
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${thumbnail.jobs.workers:2}")
+    private int workers;
+
+    @Value("${thumbnail.jobs.interactive-workers:2}")
+    private int interactiveWorkers;
+
+    @Value("${thumbnail.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${thumbnail.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    private final Map<String, ThumbnailJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+    private ThreadPoolExecutor interactiveExecutor;
+
+    @PostConstruct
+    public void start() {
+        executor = newExecutor("thumbnail-job-", workers);
+        interactiveExecutor = newExecutor("thumbnail-job-interactive-", interactiveWorkers);
+        Gauge.builder("thumbnail.jobs.queued", this, ThumbnailJobService::getQueueDepth)
+                .description("Jobs waiting to start").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        interactiveExecutor.shutdownNow();
+    }
+
+    private ThreadPoolExecutor newExecutor(String namePrefix, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, namePrefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public ThumbnailJob submit(File path) {
+        return submit(path, ThumbnailExecutionEngine.Lane.BULK);
+    }
+
+    /**
+     * Queues a job for the given path, running its files in the given lane.
+     *
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public ThumbnailJob submit(File path, ThumbnailExecutionEngine.Lane lane) {
+        purgeExpiredJobs();
+        ThumbnailJob job = new ThumbnailJob(path.getAbsolutePath(), lane);
+        jobs.put(job.getId(), job);
+        ThreadPoolExecutor target =
+                lane == ThumbnailExecutionEngine.Lane.INTERACTIVE ? interactiveExecutor : executor;
+        try {
+            job.setFuture(target.submit(() -> run(job, path)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        logger.info("Queued {} thumbnail job {} for {}", lane.getKey(), job.getId(),
+                job.getPath());
+        return job;
+    }
+
+    public Optional<ThumbnailJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public boolean cancel(String id) {
+        ThumbnailJob job = jobs.get(id);
+        return job != null && job.cancel();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size() + interactiveExecutor.getQueue().size();
+    }
+
+    private void run(ThumbnailJob job, File path) {
+        if (job.isCancelled()) {
+            job.markFinished(null);
+            return;
+        }
+        job.markRunning();
+        Throwable failure = null;
+        try {
+            thumbnailService.processPath(path, job);
+        } catch (RuntimeException e) {
+            logger.error("Thumbnail job {} failed", job.getId(), e);
+            failure = e;
+        } finally {
+            job.markFinished(failure);
+            logger.info("Thumbnail job {} finished: {} done, {} failed", job.getId(),
+                    job.getCompleted(), job.getFailed());
+        }
+    }
+
+    private void purgeExpiredJobs() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(retentionMinutes));
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() != null
+                && job.getFinishedAt().isBefore(cutoff));
+    }
+}
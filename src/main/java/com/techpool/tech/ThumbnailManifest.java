@@ -0,0 +1,164 @@
+package com.techpool.tech;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Persistent record of which source files already have an up-to-date thumbnail. Entries are kept
+ * in memory and persisted as an append-only log that is replayed (and compacted) on startup, so
+ * re-runs over the same tree only regenerate files whose size, mtime, content or output spec
+ * changed.
+ */
+@Component
+public class ThumbnailManifest {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailManifest.class);
+
+    public record Entry(long size, long lastModified, String contentHash, String outputSpec) {
+    }
+
+    @Value("${thumbnail.manifest.enabled:true}")
+    private boolean enabled;
+
+    @Value("${thumbnail.manifest.path:${user.home}/.thumbnail-service/manifest.log}")
+    private String manifestPath;
+
+    @Value("${thumbnail.manifest.content-hash:false}")
+    private boolean contentHash;
+
+    // Nearly every entry has one of a few output specs; keep one copy of each
+    private final Map<String, String> outputSpecs = new ConcurrentHashMap<>();
+    private final PathRecordLog<Entry> entries =
+            new PathRecordLog<>("thumbnail manifest", new PathRecordLog.Codec<>() {
+                @Override
+                public void write(DataOutputStream out, Entry entry) throws IOException {
+                    out.writeLong(entry.size());
+                    out.writeLong(entry.lastModified());
+                    out.writeUTF(entry.contentHash() == null ? "" : entry.contentHash());
+                    out.writeUTF(entry.outputSpec());
+                }
+
+                @Override
+                public Entry read(DataInputStream in) throws IOException {
+                    long size = in.readLong();
+                    long lastModified = in.readLong();
+                    String hash = in.readUTF();
+                    String spec = in.readUTF();
+                    return new Entry(size, lastModified, hash.isEmpty() ? null : hash,
+                            outputSpecs.computeIfAbsent(spec, s -> s));
+                }
+            });
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (enabled) {
+            entries.open(Paths.get(manifestPath));
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        entries.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true if the recorded entry still matches the file and the requested output spec.
+     * When content hashing is enabled, a file whose mtime changed but whose bytes did not is
+     * treated as unchanged and its entry is refreshed.
+     */
+    public boolean isUpToDate(File file, String outputSpec) {
+        if (!enabled) {
+            return false;
+        }
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry == null || !entry.outputSpec().equals(outputSpec)) {
+            return false;
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (entry.size() == size && entry.lastModified() == lastModified) {
+            return true;
+        }
+        if (contentHash && entry.contentHash() != null && entry.size() == size) {
+            try {
+                String hash = hash(file);
+                if (hash.equals(entry.contentHash())) {
+                    entries.put(file.getAbsolutePath(),
+                            new Entry(size, lastModified, hash, entry.outputSpec()));
+                    return true;
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to hash {}", file.getAbsolutePath(), e);
+            }
+        }
+        return false;
+    }
+
+    public void record(File file, String outputSpec) {
+        if (!enabled) {
+            return;
+        }
+        String hash = null;
+        if (contentHash) {
+            try {
+                hash = hash(file);
+            } catch (IOException e) {
+                logger.warn("Failed to hash {}", file.getAbsolutePath(), e);
+            }
+        }
+        entries.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), hash,
+                outputSpecs.computeIfAbsent(outputSpec, spec -> spec)));
+    }
+
+    public void remove(File file) {
+        if (enabled) {
+            entries.remove(file.getAbsolutePath());
+        }
+    }
+
+    public Entry get(File file) {
+        return entries.get(file.getAbsolutePath());
+    }
+
+    public Map<String, Entry> snapshot() {
+        return entries.snapshot();
+    }
+
+    static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
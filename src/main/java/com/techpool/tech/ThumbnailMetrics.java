@@ -0,0 +1,162 @@
+package com.techpool.tech;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import com.techpool.tech.utils.FFmpegRunner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Micrometer meters for thumbnail generation. Stage timers and counters are tagged with the
+ * detected content type, so latency and failure rates can be compared per format.
+ */
+@Component
+public class ThumbnailMetrics {
+
+    public enum Stage {
+        // Content type detection, including reading the header
+        DETECT,
+        // Estimating the job's working set and waiting for that much of the memory budget
+        ADMIT,
+        // Handler work up to a decoded or rendered image: decoding, PDF/DOCX rendering, ffmpeg
+        RENDER,
+        // Scaling and cropping to each rendition
+        RESIZE,
+        // Encoding; file outputs encode straight into the temp file, so this includes that I/O
+        ENCODE,
+        // Moving the finished thumbnail into place, or appending it to the pack store
+        WRITE
+    }
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private ThumbnailExecutionEngine executionEngine;
+
+    @Autowired
+    private FFmpegRunner ffmpegRunner;
+
+    @Autowired
+    private AdmissionController admission;
+
+    @Autowired
+    private ThumbnailPackStore packStore;
+
+    @Autowired
+    private HandlerDeadlines deadlines;
+
+    @PostConstruct
+    public void bindGauges() {
+        for (ThumbnailExecutionEngine.WorkerPool pool : ThumbnailExecutionEngine.WorkerPool
+                .values()) {
+            for (ThumbnailExecutionEngine.Lane lane : ThumbnailExecutionEngine.Lane.values()) {
+                Gauge.builder("thumbnail.executor.queued", executionEngine,
+                        engine -> engine.getQueueDepth(pool, lane))
+                        .description("Tasks waiting for a worker")
+                        .tag("pool", pool.getKey()).tag("lane", lane.getKey())
+                        .register(registry);
+            }
+            Gauge.builder("thumbnail.executor.active", executionEngine,
+                    engine -> engine.getActiveCount(pool))
+                    .description("Tasks running on a worker")
+                    .tag("pool", pool.getKey()).register(registry);
+        }
+        Gauge.builder("thumbnail.ffmpeg.active", ffmpegRunner, FFmpegRunner::getActiveProcesses)
+                .description("Running ffmpeg and ffprobe processes").register(registry);
+        Gauge.builder("thumbnail.deadline.abandoned", deadlines,
+                HandlerDeadlines::getAbandonedCount)
+                .description("Handlers past their deadline that are still running")
+                .register(registry);
+        Gauge.builder("thumbnail.admission.available", admission,
+                AdmissionController::getAvailableBytes)
+                .description("Memory budget not taken by running jobs")
+                .baseUnit("bytes").register(registry);
+        if (packStore.isEnabled()) {
+            Gauge.builder("thumbnail.pack.size", packStore, ThumbnailPackStore::getTotalBytes)
+                    .description("Bytes in pack store segments")
+                    .baseUnit("bytes").register(registry);
+            Gauge.builder("thumbnail.pack.garbage", packStore,
+                    ThumbnailPackStore::getGarbageBytes)
+                    .description("Pack store bytes that compaction would reclaim")
+                    .baseUnit("bytes").register(registry);
+        }
+    }
+
+    public void recordStage(Stage stage, String contentType, long nanos) {
+        Timer.builder("thumbnail.stage")
+                .description("Time spent in one stage of thumbnail generation")
+                .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                .tag("type", contentType)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Final outcome per source: generated, fallback, skipped or failed
+    public void recordResult(String contentType, ThumbnailJob.FileStatus status) {
+        Counter.builder("thumbnail.files")
+                .tag("type", contentType)
+                .tag("status", status.name().toLowerCase(Locale.ROOT))
+                .register(registry).increment();
+    }
+
+    // Why a placeholder was drawn: no handler for the type, or the handler failed
+    public void recordFallback(String contentType, String reason) {
+        Counter.builder("thumbnail.fallbacks")
+                .tag("type", contentType)
+                .tag("reason", reason)
+                .register(registry).increment();
+    }
+
+    // Jobs over the per-job memory cap: generated at reduced resolution, or as a placeholder
+    public void recordAdmission(String contentType, String outcome) {
+        Counter.builder("thumbnail.admission.downgrades")
+                .tag("type", contentType)
+                .tag("outcome", outcome)
+                .register(registry).increment();
+    }
+
+    // Cluster work units: claimed, held by another instance, or lost to one after expiring
+    public void recordLease(String outcome) {
+        Counter.builder("thumbnail.cluster.leases").tag("outcome", outcome).register(registry)
+                .increment();
+    }
+
+    public void recordRetry(String contentType) {
+        Counter.builder("thumbnail.retries").tag("type", contentType).register(registry)
+                .increment();
+    }
+
+    public void recordSource(String contentType, long bytes) {
+        DistributionSummary.builder("thumbnail.source.size")
+                .description("Size of the sources thumbnails are generated from")
+                .baseUnit("bytes")
+                .tag("type", contentType)
+                .register(registry).record(bytes);
+    }
+
+    public void recordPixels(String contentType, long pixels) {
+        Counter.builder("thumbnail.decoded.pixels")
+                .description("Pixels of the decoded or rendered images handed to the resizer")
+                .tag("type", contentType)
+                .register(registry).increment(pixels);
+    }
+
+    /**
+     * Hit or miss on one of the service's own caches, under the same {@code cache.gets} meter
+     * Spring's cache metrics use, so hit ratios are queried the same way.
+     */
+    public void recordCacheGet(String cache, boolean hit) {
+        Counter.builder("cache.gets")
+                .tag("cache", cache)
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry).increment();
+    }
+}
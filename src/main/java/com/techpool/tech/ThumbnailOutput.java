@@ -0,0 +1,56 @@
+package com.techpool.tech;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Where a {@link ThumbnailHandler} writes its results for one source file. Implementations take
+ * care of renditions, naming and atomic writes.
+ */
+public interface ThumbnailOutput {
+
+    List<ThumbnailRendition> renditions();
+
+    /**
+     * Heap the job was admitted with. Handlers that can render at lower resolution keep their
+     * decoded or rendered image within it.
+     */
+    default long memoryLimit() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Writes every rendition of {@code image}; {@code format} is used where a rendition leaves the
+     * format on auto.
+     */
+    void save(BufferedImage image, String format) throws IOException;
+
+    // Plain wrapped text, for sources that have text but could not be rendered
+    void saveTextPreview(String text) throws IOException;
+
+    // Wrapped text under a title, for documents previewed from their text
+    void saveDocumentPreview(String title, String text) throws IOException;
+
+    // Tabular preview of the first rows of a data file
+    void saveDataPreview(List<String> lines) throws IOException;
+
+    /**
+     * Whether extra outputs such as storyboards can be written; false when the thumbnail is
+     * returned to a caller instead of stored.
+     */
+    default boolean supportsSidecars() {
+        return true;
+    }
+
+    /**
+     * Path for an extra output next to the thumbnails, e.g. a storyboard sprite.
+     */
+    Path sidecarPath(String suffix, String extension);
+
+    void writeImage(BufferedImage image, Path path, String format) throws IOException;
+
+    // UTF-8 text for an extra output, e.g. a storyboard index; written atomically like images
+    void writeText(CharSequence text, Path path) throws IOException;
+}
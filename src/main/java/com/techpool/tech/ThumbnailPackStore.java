@@ -0,0 +1,652 @@
+package com.techpool.tech;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Optional thumbnail store that packs thumbnails into a few large segment files instead of
+ * writing a {@code thumb_} file next to every source. Segments are append-only logs of encoded
+ * thumbnails, keyed by the source's content hash and the rendition, and of source records that
+ * map a path to the content hash it had. Identical files share one set of thumbnails, and paths
+ * that would collide as sidecar names are kept apart. The index is rebuilt by replaying the
+ * segments on startup, and reads go through read-only memory maps. Thumbnails no source refers to
+ * any more are reclaimed by compaction, which copies the live records into fresh segments.
+ */
+@Component
+public class ThumbnailPackStore {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailPackStore.class);
+
+    private static final byte RECORD_THUMBNAIL = 1;
+    private static final byte RECORD_SOURCE = 2;
+    private static final byte RECORD_REMOVE = 3;
+    private static final String SEGMENT_SUFFIX = ".pack";
+    // One segment is mapped as a single buffer, which cannot exceed 2 GB
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    // Stores with less garbage than this are not worth rewriting
+    private static final long MIN_COMPACT_GARBAGE_BYTES = 1L << 20;
+    // Segments are mapped in windows of two chunks, one starting at every chunk
+    private static final long MAP_CHUNK_BYTES = 32L << 20;
+
+    /**
+     * A stored thumbnail: a read-only view of its bytes in the segment, and its format.
+     */
+    public record Thumbnail(ByteBuffer data, String format) {
+    }
+
+    private record Source(long size, long lastModified, String contentHash) {
+    }
+
+    private record Blob(Segment segment, long offset, int length, String format,
+            int recordLength) {
+    }
+
+    @Value("${thumbnail.store:sidecar}")
+    private String store;
+
+    @Value("${thumbnail.pack.directory:${user.home}/.thumbnail-service/pack}")
+    private String directory;
+
+    @Value("${thumbnail.pack.segment-size-mb:256}")
+    private long segmentSizeMb;
+
+    // Compaction starts once this share of the segments holds data nothing refers to
+    @Value("${thumbnail.pack.compact-garbage-ratio:0.5}")
+    private double compactGarbageRatio;
+
+    private final Map<String, Source> sources = new ConcurrentHashMap<>();
+    // By content hash and rendition key
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+    // The fields below are guarded by this
+    private final Map<String, Integer> references = new HashMap<>();
+    private final Map<String, Long> blobBytes = new HashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private int nextId = 1;
+    private long segmentBytes;
+    private long totalBytes;
+    private long garbageBytes;
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final Object compactLock = new Object();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "thumbnail-pack-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        segmentBytes = Math.min(MAX_SEGMENT_BYTES, segmentSizeMb * 1024 * 1024);
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        Map<Integer, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> children =
+                Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                try {
+                    found.put(Integer.parseInt(name.substring(0, name.length()
+                            - SEGMENT_SUFFIX.length())), child);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in thumbnail pack directory: {}", child);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Path> entry : found.entrySet()) {
+            Segment segment = new Segment(entry.getKey(), entry.getValue());
+            segments.add(segment);
+            replay(segment);
+        }
+        recount();
+        active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        nextId = active == null ? 1 : active.id + 1;
+        logger.info("Opened thumbnail pack store {}: {} sources, {} thumbnails in {} segments",
+                dir, sources.size(), blobs.size(), segments.size());
+        compactIfNeeded();
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        compactor.shutdownNow();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        active = null;
+    }
+
+    public boolean isEnabled() {
+        return "pack".equals(store.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Whether the recorded content of {@code file} still matches it by size and mtime, and every
+     * rendition of that content is stored.
+     */
+    public boolean isUpToDate(File file, List<ThumbnailRendition> renditions) {
+        Source source = sources.get(file.getAbsolutePath());
+        return source != null && source.size() == file.length()
+                && source.lastModified() == file.lastModified()
+                && containsAll(source.contentHash(), renditions);
+    }
+
+    // Whether thumbnails of this content are stored for every rendition, e.g. from a copy
+    public boolean containsAll(String contentHash, List<ThumbnailRendition> renditions) {
+        for (ThumbnailRendition rendition : renditions) {
+            if (!blobs.containsKey(blobKey(contentHash, rendition))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The stored thumbnail of {@code file} for one rendition, or null when it is missing or the
+     * file changed since.
+     */
+    public Thumbnail find(File file, ThumbnailRendition rendition) throws IOException {
+        Source source = sources.get(file.getAbsolutePath());
+        if (source == null || source.size() != file.length()
+                || source.lastModified() != file.lastModified()) {
+            return null;
+        }
+        Blob blob = blobs.get(blobKey(source.contentHash(), rendition));
+        return blob == null ? null
+                : new Thumbnail(blob.segment().slice(blob.offset(), blob.length()),
+                        blob.format());
+    }
+
+    /**
+     * Stores the thumbnails generated for {@code file} and records the file as having
+     * {@code contentHash}. Thumbnails already stored for the same content are not written again.
+     */
+    public synchronized void put(File file, String contentHash,
+            Map<ThumbnailRendition, ThumbnailService.EncodedThumbnail> thumbnails)
+            throws IOException {
+        for (Map.Entry<ThumbnailRendition, ThumbnailService.EncodedThumbnail> entry : thumbnails
+                .entrySet()) {
+            String key = blobKey(contentHash, entry.getKey());
+            if (!blobs.containsKey(key)) {
+                appendBlob(key, entry.getValue().format(), entry.getValue().data());
+            }
+        }
+        link(file, contentHash);
+    }
+
+    /**
+     * Records {@code file} as having {@code contentHash}, whose thumbnails are already stored.
+     */
+    public synchronized void link(File file, String contentHash) throws IOException {
+        String path = file.getAbsolutePath();
+        Source source = new Source(file.length(), file.lastModified(), contentHash);
+        Source previous = sources.get(path);
+        if (source.equals(previous)) {
+            return;
+        }
+        append(sourceRecord(path, source));
+        sources.put(path, source);
+        reference(contentHash, 1);
+        if (previous != null) {
+            garbageBytes += sourceRecord(path, previous).remaining();
+            reference(previous.contentHash(), -1);
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized void remove(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        Source previous = sources.get(path);
+        if (previous == null) {
+            return;
+        }
+        ByteBuffer record = pathRecord(RECORD_REMOVE, path);
+        int length = record.remaining();
+        append(record);
+        sources.remove(path);
+        garbageBytes += length + sourceRecord(path, previous).remaining();
+        reference(previous.contentHash(), -1);
+        compactIfNeeded();
+    }
+
+    // Paths the store holds thumbnails for
+    public Set<String> sourcePaths() {
+        return Set.copyOf(sources.keySet());
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    // A hash's thumbnails become garbage when its last source goes, and live again with a new one
+    private void reference(String contentHash, int delta) {
+        int before = references.getOrDefault(contentHash, 0);
+        int after = before + delta;
+        if (after > 0) {
+            references.put(contentHash, after);
+        } else {
+            references.remove(contentHash);
+        }
+        long bytes = blobBytes.getOrDefault(contentHash, 0L);
+        if (before == 0 && after > 0) {
+            garbageBytes -= bytes;
+        } else if (before > 0 && after == 0) {
+            garbageBytes += bytes;
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (garbageBytes >= MIN_COMPACT_GARBAGE_BYTES
+                && garbageBytes > compactGarbageRatio * totalBytes
+                && compacting.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Thumbnail pack compaction failed", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies referenced thumbnails and current source records into new segments and deletes the
+     * old ones. Writers only wait while the index is swapped: they move on to a new segment
+     * first, numbered after the ones reserved for the copy, so a replay still applies their
+     * records last. Readers keep using the old segments' maps, which stay valid after the files
+     * are deleted. A crash part way leaves both copies, and the replay keeps the newer one.
+     */
+    public void compact() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (compactLock) {
+            List<Segment> old;
+            Map<String, Blob> live = new HashMap<>();
+            Map<String, Source> liveSources;
+            CopyWriter writer;
+            long before;
+            synchronized (this) {
+                before = totalBytes;
+                old = new ArrayList<>(segments);
+                long bytes = 0;
+                for (Map.Entry<String, Blob> entry : blobs.entrySet()) {
+                    if (references.containsKey(hashOf(entry.getKey()))) {
+                        live.put(entry.getKey(), entry.getValue());
+                        bytes += entry.getValue().recordLength();
+                    }
+                }
+                liveSources = new HashMap<>(sources);
+                for (Map.Entry<String, Source> source : liveSources.entrySet()) {
+                    bytes += sourceRecord(source.getKey(), source.getValue()).remaining();
+                }
+                // Two segments in a row always hold more than one segment's worth
+                int reserved = 2 * (int) ((bytes + segmentBytes - 1) / segmentBytes) + 2;
+                writer = new CopyWriter(nextId, nextId + reserved);
+                nextId += reserved;
+                active = null;
+            }
+            boolean swapped = false;
+            try {
+                for (Segment segment : old) {
+                    // Map everything now, so slices taken by readers never need the closed channel
+                    segment.mapAll();
+                }
+                Map<String, Blob> copies = new HashMap<>();
+                for (Map.Entry<String, Blob> entry : live.entrySet()) {
+                    Blob blob = entry.getValue();
+                    ByteBuffer record = blobRecord(entry.getKey(), blob.format(),
+                            blob.segment().slice(blob.offset(), blob.length()));
+                    int length = record.remaining();
+                    Segment target = writer.target(length);
+                    long position = target.write(record);
+                    copies.put(entry.getKey(), new Blob(target,
+                            position + length - blob.length(), blob.length(), blob.format(),
+                            length));
+                }
+                for (Map.Entry<String, Source> source : liveSources.entrySet()) {
+                    ByteBuffer record = sourceRecord(source.getKey(), source.getValue());
+                    writer.target(record.remaining()).write(record);
+                }
+                for (Segment segment : writer.written) {
+                    segment.channel.force(false);
+                }
+                synchronized (this) {
+                    swapped = true;
+                    swap(old, writer.written, live, copies);
+                }
+                logger.info("Compacted thumbnail pack store from {} to {} bytes", before,
+                        getTotalBytes());
+            } finally {
+                if (!swapped) {
+                    for (Segment segment : writer.written) {
+                        segment.close();
+                        Files.deleteIfExists(segment.path);
+                    }
+                }
+            }
+        }
+    }
+
+    // Points the index at the copies and retires the old segments; callers hold the lock
+    private void swap(List<Segment> old, List<Segment> written, Map<String, Blob> live,
+            Map<String, Blob> copies) throws IOException {
+        Map<Segment, Boolean> retired = new IdentityHashMap<>();
+        for (Segment segment : old) {
+            retired.put(segment, true);
+        }
+        segments.addAll(old.size(), written);
+        Map<String, Blob> relinked = new HashMap<>();
+        for (Map.Entry<String, Blob> entry : blobs.entrySet()) {
+            String key = entry.getKey();
+            Blob blob = entry.getValue();
+            if (!retired.containsKey(blob.segment())) {
+                continue;
+            }
+            if (blob == live.get(key)) {
+                blobs.put(key, copies.get(key));
+            } else if (references.containsKey(hashOf(key))) {
+                // Garbage when the copy started, but a copy of the same content was linked since
+                relinked.put(key, blob);
+            } else {
+                blobs.remove(key);
+            }
+        }
+        for (Map.Entry<String, Blob> entry : relinked.entrySet()) {
+            Blob blob = entry.getValue();
+            ByteBuffer data = blob.segment().slice(blob.offset(), blob.length());
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            appendBlob(entry.getKey(), blob.format(), bytes);
+        }
+        segments.removeAll(old);
+        for (Segment segment : old) {
+            segment.close();
+            Files.deleteIfExists(segment.path);
+        }
+        recount();
+    }
+
+    // Works out sizes, references and garbage from the index, after a replay or a compaction
+    private void recount() {
+        totalBytes = 0;
+        for (Segment segment : segments) {
+            totalBytes += segment.size;
+        }
+        references.clear();
+        blobBytes.clear();
+        long live = 0;
+        for (Map.Entry<String, Source> source : sources.entrySet()) {
+            live += sourceRecord(source.getKey(), source.getValue()).remaining();
+            references.merge(source.getValue().contentHash(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Blob> blob : blobs.entrySet()) {
+            blobBytes.merge(hashOf(blob.getKey()), (long) blob.getValue().recordLength(),
+                    Long::sum);
+        }
+        for (Map.Entry<String, Long> hash : blobBytes.entrySet()) {
+            if (references.containsKey(hash.getKey())) {
+                live += hash.getValue();
+            }
+        }
+        garbageBytes = totalBytes - live;
+    }
+
+    private Blob appendBlob(String key, String format, byte[] data) throws IOException {
+        ByteBuffer record = blobRecord(key, format, ByteBuffer.wrap(data));
+        int length = record.remaining();
+        long position = append(record);
+        Blob blob = new Blob(active, position + length - data.length, data.length, format,
+                length);
+        addBlob(key, blob);
+        return blob;
+    }
+
+    private static ByteBuffer blobRecord(String key, String format, ByteBuffer data) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] formatBytes = format.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + keyBytes.length + 2 + formatBytes.length
+                + 4 + data.remaining());
+        record.put(RECORD_THUMBNAIL);
+        putString(record, keyBytes);
+        putString(record, formatBytes);
+        record.putInt(data.remaining());
+        record.put(data);
+        return record.flip();
+    }
+
+    private void addBlob(String key, Blob blob) {
+        String hash = hashOf(key);
+        // Replaced only by replay and compaction, which both work out garbage afterwards
+        Blob previous = blobs.put(key, blob);
+        long delta = blob.recordLength() - (previous == null ? 0 : previous.recordLength());
+        blobBytes.merge(hash, delta, Long::sum);
+        if (!references.containsKey(hash)) {
+            garbageBytes += blob.recordLength();
+        }
+    }
+
+    // Appends to the active segment, starting a new one when it is full; returns the offset
+    private long append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (active == null || active.isFull(length, segmentBytes)) {
+            active = newSegment(nextId++);
+            segments.add(active);
+        }
+        totalBytes += length;
+        return active.write(record);
+    }
+
+    private Segment newSegment(int id) throws IOException {
+        return new Segment(id, Paths.get(directory).resolve(
+                String.format(Locale.ROOT, "%08d%s", id, SEGMENT_SUFFIX)));
+    }
+
+    // Writes a compaction's copies into the segment numbers reserved for it
+    private final class CopyWriter {
+        final List<Segment> written = new ArrayList<>();
+        private int nextId;
+        private final int endId;
+
+        CopyWriter(int firstId, int endId) {
+            this.nextId = firstId;
+            this.endId = endId;
+        }
+
+        Segment target(int length) throws IOException {
+            Segment last = written.isEmpty() ? null : written.get(written.size() - 1);
+            if (last != null && !last.isFull(length, segmentBytes)) {
+                return last;
+            }
+            if (nextId >= endId) {
+                throw new IOException("Thumbnail pack compaction outgrew its segment numbers");
+            }
+            Segment segment = newSegment(nextId++);
+            written.add(segment);
+            return segment;
+        }
+    }
+
+    private void replay(Segment segment) throws IOException {
+        // Mapped whole for the one pass; later reads go through the windows
+        ByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        int good = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                String key = getString(buffer);
+                if (type == RECORD_THUMBNAIL) {
+                    String format = getString(buffer);
+                    int length = buffer.getInt();
+                    int offset = buffer.position();
+                    buffer.position(offset + length);
+                    addBlob(key, new Blob(segment, offset, length, format,
+                            buffer.position() - good));
+                } else if (type == RECORD_SOURCE) {
+                    sources.put(key, new Source(buffer.getLong(), buffer.getLong(),
+                            getString(buffer)));
+                } else if (type == RECORD_REMOVE) {
+                    sources.remove(key);
+                } else {
+                    throw new IOException("Corrupt thumbnail pack record type " + type);
+                }
+                good = buffer.position();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IOException e) {
+            // A record torn by a crash; drop it so appends continue from the last whole one
+            logger.warn("Truncating thumbnail pack segment {} from {} to {} bytes", segment.path,
+                    segment.size, good);
+            segment.truncate(good);
+        }
+    }
+
+    private static ByteBuffer sourceRecord(String path, Source source) {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        byte[] hashBytes = source.contentHash().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + pathBytes.length + 16 + 2
+                + hashBytes.length);
+        record.put(RECORD_SOURCE);
+        putString(record, pathBytes);
+        record.putLong(source.size());
+        record.putLong(source.lastModified());
+        putString(record, hashBytes);
+        return record.flip();
+    }
+
+    private static ByteBuffer pathRecord(byte type, String path) {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + pathBytes.length);
+        record.put(type);
+        putString(record, pathBytes);
+        return record.flip();
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String hashOf(String blobKey) {
+        return blobKey.substring(0, blobKey.indexOf('/'));
+    }
+
+    // The rendition's name is left out, so renditions of the same size and format share output
+    private static String blobKey(String contentHash, ThumbnailRendition rendition) {
+        return contentHash + "/" + rendition.width() + "x" + rendition.height() + ":"
+                + rendition.fitMode().name().toLowerCase(Locale.ROOT) + ":" + rendition.format();
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        long size;
+        // By start offset; each covers up to two chunks, so any record up to a chunk long fits
+        private final Map<Long, MappedByteBuffer> windows = new ConcurrentHashMap<>();
+
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        boolean isFull(int length, long limit) {
+            return size > 0 && size + length > limit;
+        }
+
+        // Appends a record at the end; returns its offset
+        long write(ByteBuffer record) throws IOException {
+            long position = size;
+            long offset = position;
+            while (record.hasRemaining()) {
+                offset += channel.write(record, offset);
+            }
+            size = offset;
+            return position;
+        }
+
+        // Read-only view of a range, remapping its window once the segment has grown past it
+        ByteBuffer slice(long offset, int length) throws IOException {
+            if (length > MAP_CHUNK_BYTES) {
+                // Longer than a window can hold; mapped on its own
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+            long start = offset - offset % MAP_CHUNK_BYTES;
+            MappedByteBuffer window = windows.get(start);
+            if (window == null || start + window.capacity() < offset + length) {
+                window = map(start, offset + length);
+            }
+            return window.slice((int) (offset - start), length).asReadOnlyBuffer();
+        }
+
+        private synchronized MappedByteBuffer map(long start, long needed) throws IOException {
+            MappedByteBuffer window = windows.get(start);
+            if (window == null || start + window.capacity() < needed) {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(channel.size() - start, 2 * MAP_CHUNK_BYTES));
+                windows.put(start, window);
+            }
+            return window;
+        }
+
+        void mapAll() throws IOException {
+            for (long start = 0; start < size; start += MAP_CHUNK_BYTES) {
+                map(start, Math.min(size, start + 2 * MAP_CHUNK_BYTES));
+            }
+        }
+
+        synchronized void truncate(long length) throws IOException {
+            channel.truncate(length);
+            size = length;
+            windows.clear();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
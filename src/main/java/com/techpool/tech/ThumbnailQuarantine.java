@@ -0,0 +1,122 @@
+package com.techpool.tech;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Sources that keep failing, remembered by path, size and mtime. Once a version of a file has
+ * failed often enough, later runs draw its placeholder straight away instead of spending another
+ * deadline on it; changing the file clears it. Kept in a {@link PathRecordLog}, like the
+ * manifest.
+ */
+@Component
+public class ThumbnailQuarantine {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailQuarantine.class);
+
+    public record Entry(long size, long lastModified, int failures, String reason) {
+    }
+
+    @Value("${thumbnail.quarantine.enabled:true}")
+    private boolean enabled;
+
+    @Value("${thumbnail.quarantine.path:${user.home}/.thumbnail-service/quarantine.log}")
+    private String quarantinePath;
+
+    // Failed generations of the same file version before it is quarantined
+    @Value("${thumbnail.quarantine.after-failures:2}")
+    private int afterFailures;
+
+    private final PathRecordLog<Entry> entries =
+            new PathRecordLog<>("thumbnail quarantine", new PathRecordLog.Codec<>() {
+                @Override
+                public void write(DataOutputStream out, Entry entry) throws IOException {
+                    out.writeLong(entry.size());
+                    out.writeLong(entry.lastModified());
+                    out.writeInt(entry.failures());
+                    out.writeUTF(entry.reason());
+                }
+
+                @Override
+                public Entry read(DataInputStream in) throws IOException {
+                    return new Entry(in.readLong(), in.readLong(), in.readInt(), in.readUTF());
+                }
+            });
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (enabled) {
+            entries.open(Paths.get(quarantinePath));
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        entries.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isQuarantined(File file) {
+        if (!enabled) {
+            return false;
+        }
+        Entry entry = entries.get(file.getAbsolutePath());
+        return entry != null && entry.failures() >= afterFailures && matches(entry, file);
+    }
+
+    /**
+     * True while the current version of the file has failed but not yet often enough to be
+     * quarantined. Its placeholder is then only temporary and the file is tried again.
+     */
+    public boolean isPendingRetry(File file) {
+        if (!enabled) {
+            return false;
+        }
+        Entry entry = entries.get(file.getAbsolutePath());
+        return entry != null && entry.failures() < afterFailures && matches(entry, file);
+    }
+
+    public void recordFailure(File file, Throwable error) {
+        if (!enabled) {
+            return;
+        }
+        String path = file.getAbsolutePath();
+        Entry previous = entries.get(path);
+        int failures = previous != null && matches(previous, file) ? previous.failures() + 1 : 1;
+        String reason = String.valueOf(error.getMessage());
+        Entry entry = new Entry(file.length(), file.lastModified(), failures,
+                reason.length() > 500 ? reason.substring(0, 500) : reason);
+        entries.put(path, entry);
+        if (failures == afterFailures) {
+            logger.warn("Quarantined {} after {} failed attempts: {}", path, failures,
+                    entry.reason());
+        }
+    }
+
+    // A successful generation, or a deleted source
+    public void clear(File file) {
+        if (enabled) {
+            entries.remove(file.getAbsolutePath());
+        }
+    }
+
+    public Map<String, Entry> snapshot() {
+        return entries.snapshot();
+    }
+
+    private static boolean matches(Entry entry, File file) {
+        return entry.size() == file.length() && entry.lastModified() == file.lastModified();
+    }
+}
@@ -0,0 +1,111 @@
+package com.techpool.tech;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * One output size produced for every source file. Renditions are configured as a comma-separated
+ * list of {@code name:WIDTHxHEIGHT[:fit|fill][:auto|jpg|png]}, e.g.
+ * {@code small:100x150:fill:jpg,large:400x600}.
+ */
+public record ThumbnailRendition(String name, int width, int height, FitMode fitMode,
+        String format) {
+
+    public static final String DEFAULT_NAME = "default";
+
+    public enum FitMode {
+        // Scale to fit inside the box, keeping the whole image
+        FIT,
+        // Scale to cover the box and crop the overflow around the centre
+        FILL
+    }
+
+    // Names end up in output file names, so they may not carry path separators or dots
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9-]+");
+    private static final Set<String> FORMATS = Set.of("auto", "jpg", "png");
+
+    public ThumbnailRendition {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid rendition name: " + name);
+        }
+        if (!FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unsupported rendition format: " + format);
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Rendition size must be positive: " + name);
+        }
+    }
+
+    public static ThumbnailRendition of(String name, int width, int height) {
+        return new ThumbnailRendition(name, width, height, FitMode.FIT, "auto");
+    }
+
+    public static List<ThumbnailRendition> parseList(String spec) {
+        List<ThumbnailRendition> renditions = new ArrayList<>();
+        for (String item : spec.split(",")) {
+            if (!item.isBlank()) {
+                renditions.add(parse(item.trim()));
+            }
+        }
+        // Largest first so each size can be scaled down from the previous one
+        renditions.sort(Comparator
+                .comparingLong((ThumbnailRendition r) -> (long) r.width() * r.height())
+                .reversed());
+        return renditions;
+    }
+
+    public static ThumbnailRendition parse(String spec) {
+        String[] parts = spec.split(":");
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Invalid rendition spec: " + spec);
+        }
+        String[] size = parts[1].toLowerCase(Locale.ROOT).split("x");
+        if (size.length != 2) {
+            throw new IllegalArgumentException("Invalid rendition size: " + spec);
+        }
+        FitMode fitMode = parts.length > 2 ? FitMode.valueOf(parts[2].toUpperCase(Locale.ROOT))
+                : FitMode.FIT;
+        String format = parts.length > 3 ? parts[3].toLowerCase(Locale.ROOT) : "auto";
+        return new ThumbnailRendition(parts[0], Integer.parseInt(size[0].trim()),
+                Integer.parseInt(size[1].trim()), fitMode, format);
+    }
+
+    /**
+     * Size a source image scales to for this rendition, before any FILL cropping. Images are
+     * never enlarged.
+     */
+    public Dimension scaledSize(int sourceWidth, int sourceHeight) {
+        double sx = (double) width / sourceWidth;
+        double sy = (double) height / sourceHeight;
+        double scale = fitMode == FitMode.FILL ? Math.max(sx, sy) : Math.min(sx, sy);
+        scale = Math.min(1.0, scale);
+        return new Dimension(Math.max(1, (int) Math.round(sourceWidth * scale)),
+                Math.max(1, (int) Math.round(sourceHeight * scale)));
+    }
+
+    /**
+     * Output format for this rendition; "auto" defers to what suits the source.
+     */
+    public String formatFor(String preferred) {
+        return "auto".equals(format) ? preferred : format;
+    }
+
+    /**
+     * File name suffix: empty for the default rendition, so its output keeps the plain
+     * {@code thumb_<name>} form.
+     */
+    public String suffix() {
+        return DEFAULT_NAME.equals(name) ? "" : "_" + name;
+    }
+
+    @Override
+    public String toString() {
+        return name + ":" + width + "x" + height + ":" + fitMode.name().toLowerCase(Locale.ROOT)
+                + ":" + format;
+    }
+}
@@ -0,0 +1,72 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides whether a failed generation is worth another attempt. Corrupt or unsupported files
+ * fail the same way every time, so only errors from the file system or network underneath are
+ * retried, after an exponential backoff with jitter.
+ */
+@Component
+public class ThumbnailRetryPolicy {
+
+    // Messages of errno-style failures that tend to clear up, e.g. on NFS or under fd pressure
+    private static final List<String> TRANSIENT_MESSAGES = List.of("stale file handle",
+            "resource temporarily unavailable", "input/output error", "too many open files",
+            "connection reset", "timed out");
+
+    // Attempts in total, including the first
+    @Value("${thumbnail.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${thumbnail.retry.backoff-ms:200}")
+    private long backoffMs;
+
+    @Value("${thumbnail.retry.max-backoff-ms:5000}")
+    private long maxBackoffMs;
+
+    public boolean shouldRetry(IOException e, int attempts) {
+        return attempts < maxAttempts && isTransient(e);
+    }
+
+    // Full jitter, so files that failed together do not retry together
+    public long backoffMillis(int attempts) {
+        long ceiling = Math.min(maxBackoffMs, backoffMs << Math.min(attempts - 1, 20));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    static boolean isTransient(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof HandlerDeadlines.DeadlineExceededException
+                    || t instanceof ClosedChannelException
+                    || t instanceof NoSuchFileException || t instanceof AccessDeniedException) {
+                return false;
+            }
+            if (t instanceof SocketException || t instanceof InterruptedIOException
+                    || t instanceof FileSystemException) {
+                return true;
+            }
+            String message = t.getMessage();
+            if (t instanceof IOException && message != null) {
+                String lower = message.toLowerCase(Locale.ROOT);
+                // ffmpeg reports its own timeouts this way; those are about the file
+                if (!lower.startsWith("ffmpeg")
+                        && TRANSIENT_MESSAGES.stream().anyMatch(lower::contains)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
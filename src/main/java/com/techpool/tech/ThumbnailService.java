@@ -1,590 +1,1285 @@
 package com.techpool.tech;
 
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import fr.opensagres.poi.xwpf.converter.pdf.PdfConverter;
-import fr.opensagres.poi.xwpf.converter.pdf.PdfOptions;
-import org.apache.tika.Tika;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import net.coobird.thumbnailator.Thumbnails;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
-import org.apache.pdfbox.rendering.PDFRenderer;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.poi.hwpf.HWPFDocument;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import javax.imageio.ImageIO;
-import com.opencsv.CSVReader;
-import java.awt.*;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
 
 @Service
 public class ThumbnailService {
     private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
 
     // Constants for thumbnail generation
-    private static final int THUMBNAIL_WIDTH = 400;
-    private static final int THUMBNAIL_HEIGHT = 600;
     private static final String THUMBNAIL_PREFIX = "thumb_";
-    private static final String DEFAULT_THUMBNAIL_TEXT = "No Preview\nAvailable";
-    private static final long MAX_FILE_SIZE_BYTES = 10 * 1024 * 1024; // 10MB
 
-    // Add cache (use Spring's Cacheable)
-    @Cacheable(value = "thumbnails", key = "#file.absolutePath")
-    public void processPath(File file) {
-        try {
-            validateFileSize(file);
-            if (file.isFile()) {
-                generateThumbnail(file);
-                logger.info("Generating thumbnail for: {}", file.getAbsolutePath());
-            } else {
-                processDirectory(file);
-            }
-        } catch (IOException e) {
-            logger.error("Security violation for file " + file.getAbsolutePath(), e);
+    @Autowired
+    private ThumbnailExecutionEngine executionEngine;
+
+    @Autowired
+    private ThumbnailManifest manifest;
+
+    @Autowired
+    private ThumbnailEncoder thumbnailEncoder;
+
+    @Autowired
+    private ContentTypeDetector contentTypeDetector;
+
+    @Autowired
+    private ThumbnailHandlerRegistry handlerRegistry;
+
+    @Autowired
+    private TextPreviewRenderer textPreviewRenderer;
+
+    @Autowired
+    private ThumbnailMetrics metrics;
+
+    @Autowired
+    private AdmissionController admission;
+
+    @Autowired
+    private ThumbnailPackStore packStore;
+
+    @Autowired
+    private ClusterCoordinator cluster;
+
+    @Autowired
+    private HandlerDeadlines deadlines;
+
+    @Autowired
+    private ThumbnailRetryPolicy retryPolicy;
+
+    @Autowired
+    private ThumbnailQuarantine quarantine;
+
+    // Canvas for generated previews, and the default rendition when none are configured
+    @Value("${thumbnail.width:400}")
+    private int thumbnailWidth;
+
+    @Value("${thumbnail.height:600}")
+    private int thumbnailHeight;
+
+    @Value("${thumbnail.renditions:}")
+    private String renditionSpec;
+
+    private List<ThumbnailRendition> renditions;
+
+    // Upper bound for ad-hoc sizes requested over HTTP, so clients cannot ask for huge outputs
+    @Value("${thumbnail.http.max-dimension:2048}")
+    private int maxRequestDimension;
+
+    private final Map<String, CompletableFuture<?>> onDemand = new ConcurrentHashMap<>();
+
+    // A batch of one directory's files, claimed as a whole in cluster mode
+    private record WorkUnit(String key, List<File> files) {
+    }
+
+    /**
+     * A thumbnail encoded in memory, with the format it ended up in.
+     */
+    public record EncodedThumbnail(byte[] data, String format) {
+    }
+
+    @PostConstruct
+    public void init() {
+        renditions = renditionSpec.isBlank()
+                ? List.of(ThumbnailRendition.of(ThumbnailRendition.DEFAULT_NAME, thumbnailWidth,
+                        thumbnailHeight))
+                : ThumbnailRendition.parseList(renditionSpec);
+        logger.info("Thumbnail renditions: {}", renditions);
+        if (cluster.isEnabled() && packStore.isEnabled()) {
+            throw new IllegalStateException("Cluster mode shares work through thumbnails on the"
+                    + " shared tree; the pack store belongs to a single instance");
         }
     }
 
-    private void processDirectory(File dir) {
+    public List<ThumbnailRendition> getRenditions() {
+        return renditions;
+    }
+
+    public void processPath(File file) {
+        processPath(file, new ThumbnailJob(file.getAbsolutePath()));
+    }
+
+    // Job-aware variant: reports per-file progress and stops early once the job is cancelled
+    public void processPath(File file, ThumbnailJob job) {
+        ThumbnailExecutionEngine.Batch batch = executionEngine.newBatch(job.getLane());
+        List<WorkUnit> deferred = new ArrayList<>();
         try {
-            File[] children = dir.listFiles();
-            if (children != null) {
-                Arrays.stream(children).parallel().forEach(this::processPath);
+            submitPath(file, job, batch, deferred);
+            // Units other instances hold are done by them; claiming them afterwards finds the
+            // thumbnails fresh, or takes over from an instance whose lease expired
+            while (!deferred.isEmpty() && !job.isCancelled()) {
+                Thread.sleep(cluster.getRetryMillis());
+                deferred.removeIf(unit -> submitUnit(unit, job, batch));
             }
-            logger.info("Found Directory, Moving inside");
-            logger.info("Generating thumbnail for child: {}", dir.getAbsolutePath());
-
-        } catch (Exception e) {
-            logger.error("Failed to generate thumbnail for {}", dir.getName(), e);
-            processDirectory(dir); // just call it again; no need to catch IOException
+            batch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while processing {}", file.getAbsolutePath());
         }
     }
 
-    // Add validation method
-    private void validateFileSize(File file) throws IOException {
-        if (file.length() > MAX_FILE_SIZE_BYTES) {
-            throw new IOException("File too large: " + file.getName());
+    private void submitPath(File file, ThumbnailJob job, ThumbnailExecutionEngine.Batch batch,
+            List<WorkUnit> deferred) throws InterruptedException {
+        if (job.isCancelled()) {
+            return;
         }
+        if (!file.isFile()) {
+            processDirectory(file, job, batch, deferred);
+            return;
+        }
+        if (file.getName().startsWith(THUMBNAIL_PREFIX)) {
+            return; // Our own output from an earlier run
+        }
+        if (cluster.isEnabled()) {
+            WorkUnit unit = new WorkUnit(file.getAbsolutePath(), List.of(file));
+            if (!submitUnit(unit, job, batch)) {
+                deferred.add(unit);
+            }
+            return;
+        }
+        submitFile(file, job, batch, null);
     }
 
-    private void generateThumbnail(File file) {
+    // Detects and queues one file; a lease, when given, is kept until the file is done
+    private void submitFile(File file, ThumbnailJob job, ThumbnailExecutionEngine.Batch batch,
+            ClusterCoordinator.Lease lease) throws InterruptedException {
+        // Detect up front so the file lands on the pool that matches its workload; the source
+        // stays open until the worker is done with it
+        ThumbnailSource source;
         try {
-            validateFileSize(file);
-            String type = detectMimeType(file);
-            logger.info("Detected MIME type for {}: {}", file.getName(), type);
-
-            int attempts = 0;
-            while (attempts < 2) {
+            source = contentTypeDetector.open(file);
+        } catch (IOException e) {
+            logger.error("Failed to open {}", file.getAbsolutePath(), e);
+            job.fileStarted();
+            job.fileFinished(file.getAbsolutePath(), ThumbnailJob.FileStatus.FAILED,
+                    e.getMessage(), 0);
+            return;
+        }
+        Optional<ThumbnailHandler> handler = handlerRegistry.find(source.contentType());
+        ThumbnailExecutionEngine.WorkerPool pool = handler.map(ThumbnailHandler::workerPool)
+                // Placeholder thumbnails are cheap to draw
+                .orElse(ThumbnailExecutionEngine.WorkerPool.IMAGE);
+        if (lease != null) {
+            lease.retain();
+        }
+        try {
+            batch.submit(pool, () -> {
                 try {
-                    if (type.startsWith("image")) {
-                        generateImageThumbnail(file);
-                    } else if (type.startsWith("video")) {
-                        generateVideoThumbnail(file);
-                    } else if (type.equals("application/pdf")) {
-                        generatePdfThumbnail(file);
-                    } else if (isSupportedDocument(type)) {
-                        generateDocumentThumbnail(file, type);
-                    } else if (type.equals("text/csv") || type.equals("application/vnd.ms-excel")
-                            || type.equals(
-                                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")) {
-                        generateExcelThumbnail(file);
+                    if (lease == null || lease.isHeld()) {
+                        processFile(file, source, handler.orElse(null), job);
                     } else {
-                        generateDefaultThumbnail(file);
+                        // The unit expired and another instance took it over
+                        closeQuietly(source);
+                        job.fileStarted();
+                        job.fileFinished(file.getAbsolutePath(), ThumbnailJob.FileStatus.SKIPPED,
+                                "Taken over by another instance", 0);
+                    }
+                } finally {
+                    if (lease != null) {
+                        lease.close();
                     }
-                    return; // Success
-                } catch (IOException e) {
-                    attempts++;
-                    if (attempts >= 2)
-                        throw e;
-                    logger.warn("Attempt {} failed, retrying...", attempts);
                 }
+            });
+        } catch (InterruptedException | RuntimeException e) {
+            closeQuietly(source);
+            if (lease != null) {
+                lease.close();
             }
-        } catch (Exception e) {
-            logger.error("Failed to generate thumbnail for {}", file.getName(), e);
-            try {
-                generateDefaultThumbnail(file);
-            } catch (IOException ex) {
-                logger.error("Failed to generate default thumbnail for {}", file.getName(), ex);
+            throw e;
+        }
+    }
+
+    private void processDirectory(File dir, ThumbnailJob job,
+            ThumbnailExecutionEngine.Batch batch, List<WorkUnit> deferred)
+            throws InterruptedException {
+        logger.info("Found Directory, Moving inside: {}", dir.getAbsolutePath());
+        if (cluster.isEnabled()) {
+            processDirectoryUnits(dir, job, batch, deferred);
+            return;
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir.toPath())) {
+            for (Path child : children) {
+                if (job.isCancelled()) {
+                    return;
+                }
+                submitPath(child.toFile(), job, batch, deferred);
             }
+        } catch (IOException | DirectoryIteratorException e) {
+            logger.error("Failed to list directory {}", dir.getAbsolutePath(), e);
         }
     }
 
-    private String detectMimeType(File file) throws IOException {
-        return new Tika().detect(file);
+    // Cluster mode: splits a directory's files into units in name order, so every instance
+    // computes the same units, and submits the ones it can claim
+    private void processDirectoryUnits(File dir, ThumbnailJob job,
+            ThumbnailExecutionEngine.Batch batch, List<WorkUnit> deferred)
+            throws InterruptedException {
+        List<Path> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            stream.forEach(children::add);
+        } catch (IOException | DirectoryIteratorException e) {
+            logger.error("Failed to list directory {}", dir.getAbsolutePath(), e);
+            return;
+        }
+        children.sort(null);
+        List<File> files = new ArrayList<>();
+        for (Path child : children) {
+            if (job.isCancelled()) {
+                return;
+            }
+            if (Files.isDirectory(child)) {
+                processDirectory(child.toFile(), job, batch, deferred);
+            } else if (!isThumbnailName(child.getFileName().toString())) {
+                files.add(child.toFile());
+            }
+        }
+        int size = cluster.getBatchSize();
+        for (int i = 0; i < files.size() && !job.isCancelled(); i += size) {
+            WorkUnit unit = new WorkUnit(dir.getAbsolutePath() + "#" + i / size,
+                    files.subList(i, Math.min(files.size(), i + size)));
+            if (!submitUnit(unit, job, batch)) {
+                deferred.add(unit);
+            }
+        }
     }
 
-    private boolean isSupportedDocument(String mimeType) {
-        return mimeType.equals("application/pdf") || mimeType.equals("application/msword")
-                || mimeType.equals(
-                        "application/vnd.openxmlformats-officedocument.wordprocessingml.document")
-                || mimeType.equals("application/vnd.ms-excel")
-                || mimeType
-                        .equals("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
-                || mimeType.equals("application/vnd.ms-powerpoint") || mimeType.equals(
-                        "application/vnd.openxmlformats-officedocument.presentationml.presentation");
+    /**
+     * Submits a unit's files if this instance can claim it, returning false while another
+     * instance holds it. The lease is released when the last of its files is done. When the
+     * lease store cannot be reached the files are processed unclaimed rather than not at all.
+     */
+    private boolean submitUnit(WorkUnit unit, ThumbnailJob job,
+            ThumbnailExecutionEngine.Batch batch) {
+        ClusterCoordinator.Lease lease;
+        try {
+            lease = cluster.tryClaim(unit.key());
+            if (lease == null) {
+                return false;
+            }
+        } catch (IOException e) {
+            logger.error("Failed to claim {}, processing it unclaimed", unit.key(), e);
+            lease = null;
+        } catch (InterruptedException e) {
+            // Leave it deferred; processPath sees the flag when it next waits
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            for (File file : unit.files()) {
+                if (job.isCancelled()) {
+                    break;
+                }
+                submitFile(file, job, batch, lease);
+            }
+        } catch (InterruptedException e) {
+            // Stop submitting; processPath sees the flag when it next waits
+            Thread.currentThread().interrupt();
+        } finally {
+            if (lease != null) {
+                lease.close();
+            }
+        }
+        return true;
     }
 
-    private void generateImageThumbnail(File file) throws IOException {
+    private void processFile(File file, ThumbnailSource source, ThumbnailHandler handler,
+            ThumbnailJob job) {
+        if (job.isCancelled()) {
+            closeQuietly(source);
+            return;
+        }
+        long start = System.nanoTime();
+        job.fileStarted();
+        ThumbnailJob.FileStatus status = ThumbnailJob.FileStatus.FAILED;
+        String message = null;
         try {
-            logger.info("Attempting to read image file: {}", file.getAbsolutePath());
-            BufferedImage img = ImageIO.read(file);
+            String outputSpec = outputSpec();
+            boolean upToDate;
+            if (quarantine.isPendingRetry(file)) {
+                // The placeholder from its last failure is not final
+                upToDate = false;
+            } else if (packStore.isEnabled()) {
+                upToDate = packStore.isUpToDate(file, renditions);
+                metrics.recordCacheGet("thumbnail-pack", upToDate);
+            } else if (cluster.isEnabled()) {
+                // Other instances' manifests are not visible here, the shared tree's files are
+                upToDate = findFreshThumbnails(file, renditions).size() == renditions.size();
+                metrics.recordCacheGet("thumbnail-files", upToDate);
+            } else {
+                upToDate = manifest.isUpToDate(file, outputSpec) && thumbnailExists(file);
+                if (manifest.isEnabled()) {
+                    metrics.recordCacheGet("thumbnail-manifest", upToDate);
+                }
+            }
+            if (upToDate) {
+                logger.debug("Thumbnail up to date for: {}", file.getAbsolutePath());
+                status = ThumbnailJob.FileStatus.SKIPPED;
+                return;
+            }
+            // Per-file progress is in the thumbnail.* metrics; keep INFO for the job summary
+            logger.debug("Generating thumbnail for: {}", file.getAbsolutePath());
+            status = generateFile(file, source, handler, renditions);
+        } catch (IOException e) {
+            logger.error("Failed to generate thumbnail for {}", file.getAbsolutePath(), e);
+            message = e.getMessage();
+        } finally {
+            closeQuietly(source);
+            job.fileFinished(file.getAbsolutePath(), status, message,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Rendition for an HTTP request: the configured one matching the requested size, or an ad-hoc
+     * one. Missing dimensions default to the first configured rendition's.
+     */
+    public ThumbnailRendition resolveRendition(Integer width, Integer height, String format) {
+        String fmt = format == null ? "auto" : format.toLowerCase(Locale.ROOT);
+        fmt = fmt.equals("jpeg") ? "jpg" : fmt;
+        if (!fmt.equals("auto") && !fmt.equals("jpg") && !fmt.equals("png")) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        ThumbnailRendition primary = renditions.get(0);
+        int w = width == null ? primary.width() : width;
+        int h = height == null ? primary.height() : height;
+        if (w <= 0 || h <= 0 || w > maxRequestDimension || h > maxRequestDimension) {
+            throw new IllegalArgumentException("Thumbnail size must be between 1 and "
+                    + maxRequestDimension + ": " + w + "x" + h);
+        }
+        for (ThumbnailRendition rendition : renditions) {
+            if (rendition.width() == w && rendition.height() == h
+                    && (fmt.equals("auto") || rendition.format().equals(fmt))) {
+                return rendition;
+            }
+        }
+        return new ThumbnailRendition(w + "x" + h, w, h, ThumbnailRendition.FitMode.FIT, fmt);
+    }
 
-            if (img == null) {
-                throw new IOException("Unreadable image - possibly corrupt or unsupported format");
+    /**
+     * Configured renditions picked by a comma-separated list of names sent by a client. Clients
+     * cannot define renditions of their own: each one is a stored file that only the configured
+     * renditions clean up.
+     */
+    public List<ThumbnailRendition> selectRenditions(String names) {
+        List<ThumbnailRendition> selected = new ArrayList<>();
+        for (String name : names.split(",")) {
+            String trimmed = name.trim();
+            ThumbnailRendition rendition = renditions.stream()
+                    .filter(r -> r.name().equals(trimmed))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown rendition '"
+                            + trimmed + "'; configured: " + renditions.stream()
+                                    .map(ThumbnailRendition::name).toList()));
+            if (!selected.contains(rendition)) {
+                selected.add(rendition);
             }
+        }
+        return selected;
+    }
 
-            logger.debug("Original image dimensions: {}x{}", img.getWidth(), img.getHeight());
+    /**
+     * Generates {@code outputs} for one file on the worker pool for its type, blocking while that
+     * pool is full. Files whose thumbnails are all fresh are skipped. {@code done} is called once
+     * with the result and the thumbnails on disk, on the worker thread when work was submitted;
+     * with the pack store there are no thumbnail files to report.
+     */
+    public void submitFile(File file, List<ThumbnailRendition> outputs,
+            ThumbnailExecutionEngine.Batch batch,
+            BiConsumer<ThumbnailJob.FileResult, List<Path>> done) throws InterruptedException {
+        String path = file.getAbsolutePath();
+        ThumbnailSource source;
+        try {
+            if (quarantine.isPendingRetry(file)) {
+                logger.debug("Retrying {} after an earlier failure", path);
+            } else if (packStore.isEnabled()) {
+                boolean upToDate = packStore.isUpToDate(file, outputs);
+                metrics.recordCacheGet("thumbnail-pack", upToDate);
+                if (upToDate) {
+                    done.accept(new ThumbnailJob.FileResult(path,
+                            ThumbnailJob.FileStatus.SKIPPED, null, 0), List.of());
+                    return;
+                }
+            } else {
+                List<Path> fresh = findFreshThumbnails(file, outputs);
+                metrics.recordCacheGet("thumbnail-files", fresh.size() == outputs.size());
+                if (fresh.size() == outputs.size()) {
+                    done.accept(new ThumbnailJob.FileResult(path,
+                            ThumbnailJob.FileStatus.SKIPPED, null, 0), fresh);
+                    return;
+                }
+            }
+            source = contentTypeDetector.open(file);
+        } catch (IOException e) {
+            logger.error("Failed to open {}", path, e);
+            done.accept(new ThumbnailJob.FileResult(path, ThumbnailJob.FileStatus.FAILED,
+                    e.getMessage(), 0), List.of());
+            return;
+        }
+        ThumbnailHandler handler = handlerRegistry.find(source.contentType()).orElse(null);
+        ThumbnailExecutionEngine.WorkerPool pool = handler == null
+                ? ThumbnailExecutionEngine.WorkerPool.IMAGE : handler.workerPool();
+        try {
+            batch.submit(pool, () -> {
+                long start = System.nanoTime();
+                ThumbnailJob.FileStatus status = ThumbnailJob.FileStatus.FAILED;
+                String message = null;
+                List<Path> written = List.of();
+                try {
+                    status = generateFile(file, source, handler, outputs);
+                    if (!packStore.isEnabled()) {
+                        written = findFreshThumbnails(file, outputs);
+                    }
+                    if (status == ThumbnailJob.FileStatus.FAILED) {
+                        message = "Failed to generate thumbnail";
+                    }
+                } catch (IOException e) {
+                    message = e.getMessage();
+                } finally {
+                    closeQuietly(source);
+                }
+                done.accept(new ThumbnailJob.FileResult(path, status, message,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)), written);
+            });
+        } catch (InterruptedException | RuntimeException e) {
+            closeQuietly(source);
+            throw e;
+        }
+    }
 
-            // Determine output format based on input (prefer JPG for photos, PNG for graphics)
-            String outputFormat = shouldUseJpeg(file) ? "jpg" : "png";
+    private List<Path> findFreshThumbnails(File file, List<ThumbnailRendition> outputs)
+            throws IOException {
+        List<Path> fresh = new ArrayList<>(outputs.size());
+        for (ThumbnailRendition rendition : outputs) {
+            Path path = findFreshThumbnail(file, rendition);
+            if (path != null) {
+                fresh.add(path);
+            }
+        }
+        return fresh;
+    }
 
-            // Use the improved saveThumbnail method
-            saveThumbnail(
-                    Thumbnails.of(img).size(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT).asBufferedImage(),
-                    file, outputFormat);
+    /**
+     * Returns the thumbnail of {@code file} for one rendition, generating it on the worker pool
+     * for its type when it is missing or older than the source. Concurrent requests for the same
+     * thumbnail share a single generation, which runs in the lane of the first.
+     */
+    public CompletableFuture<Path> getThumbnail(File file, ThumbnailRendition rendition,
+            ThumbnailExecutionEngine.Lane lane) throws IOException {
+        Path existing = quarantine.isPendingRetry(file) ? null
+                : findFreshThumbnail(file, rendition);
+        metrics.recordCacheGet("thumbnail-files", existing != null);
+        if (existing != null) {
+            return CompletableFuture.completedFuture(existing);
+        }
+        return generateOnce(file, rendition, lane, () -> {
+            Path path = findFreshThumbnail(file, rendition);
+            if (path == null) {
+                throw new IOException("Thumbnail missing after generation for " + file.getName());
+            }
+            return path;
+        });
+    }
 
-            logger.info("Successfully generated thumbnail for {}", file.getName());
-        } catch (Exception e) {
-            logger.error("Failed to generate thumbnail for {}: {}", file.getAbsolutePath(),
-                    e.getMessage());
-            throw e;
+    /**
+     * Same as {@link #getThumbnail} for the pack store, returning a view of the stored bytes.
+     */
+    public CompletableFuture<ThumbnailPackStore.Thumbnail> getPackedThumbnail(File file,
+            ThumbnailRendition rendition, ThumbnailExecutionEngine.Lane lane) throws IOException {
+        ThumbnailPackStore.Thumbnail existing = quarantine.isPendingRetry(file) ? null
+                : packStore.find(file, rendition);
+        metrics.recordCacheGet("thumbnail-pack", existing != null);
+        if (existing != null) {
+            return CompletableFuture.completedFuture(existing);
         }
+        return generateOnce(file, rendition, lane, () -> {
+            ThumbnailPackStore.Thumbnail thumbnail = packStore.find(file, rendition);
+            if (thumbnail == null) {
+                throw new IOException("Thumbnail missing after generation for " + file.getName());
+            }
+            return thumbnail;
+        });
     }
 
-    private boolean shouldUseJpeg(File file) {
-        String name = file.getName().toLowerCase();
-        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".tif")
-                || name.endsWith(".tiff") || name.endsWith(".bmp");
+    public boolean usesPackStore() {
+        return packStore.isEnabled();
     }
 
-    private void generateVideoThumbnail(File videoFile) throws IOException {
-        String output = getThumbnailPath(videoFile, "jpg").toString();
-        ProcessBuilder pb = new ProcessBuilder("ffmpeg", "-i", videoFile.getAbsolutePath(), "-ss",
-                "00:00:01.000", "-vframes", "1", output);
-        pb.inheritIO();
+    // Generates one rendition on demand, joining a generation already running for it
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> generateOnce(File file, ThumbnailRendition rendition,
+            ThumbnailExecutionEngine.Lane lane, Callable<T> lookup) {
+        String key = file.getAbsolutePath() + "|" + rendition;
+        CompletableFuture<T> created = new CompletableFuture<>();
+        CompletableFuture<T> inFlight = (CompletableFuture<T>) onDemand.putIfAbsent(key, created);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        created.whenComplete((result, error) -> onDemand.remove(key, created));
         try {
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new IOException("FFmpeg failed with exit code " + exitCode);
+            ThumbnailSource source = contentTypeDetector.open(file);
+            ThumbnailHandler handler =
+                    handlerRegistry.find(source.contentType()).orElse(null);
+            ThumbnailExecutionEngine.WorkerPool pool = handler == null
+                    ? ThumbnailExecutionEngine.WorkerPool.IMAGE : handler.workerPool();
+            try {
+                executionEngine.submit(pool, lane, () -> {
+                    generateOnDemand(file, source, handler, rendition);
+                    return lookup.call();
+                }).whenComplete((result, error) -> {
+                    if (error != null) {
+                        created.completeExceptionally(error);
+                    } else {
+                        created.complete(result);
+                    }
+                });
+            } catch (RuntimeException e) {
+                closeQuietly(source);
+                throw e;
             }
-            // Verify the thumbnail was created
-            if (!Files.exists(Paths.get(output))) {
-                throw new IOException("FFmpeg didn't create the thumbnail file");
+        } catch (IOException | RuntimeException e) {
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private void generateOnDemand(File file, ThumbnailSource source, ThumbnailHandler handler,
+            ThumbnailRendition rendition) throws IOException {
+        try {
+            logger.info("Generating {} thumbnail on demand for: {}", rendition,
+                    file.getAbsolutePath());
+            ThumbnailJob.FileStatus status =
+                    generateFile(file, source, handler, List.of(rendition));
+            if (status == ThumbnailJob.FileStatus.FAILED) {
+                throw new IOException("Failed to generate thumbnail for " + file.getName());
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt(); // Restore the interrupted status
-            throw new IOException("Video thumbnail generation was interrupted", e);
+        } finally {
+            closeQuietly(source);
         }
     }
 
-    private Path getThumbnailPath(File originalFile, String extension) {
-        // Get filename without extension
-        String baseName = originalFile.getName();
-        baseName = baseName.replaceAll("[^a-zA-Z0-9.-]", "_");
-        int dotIndex = baseName.lastIndexOf('.');
-        if (dotIndex > 0) {
-            baseName = baseName.substring(0, dotIndex);
+    /**
+     * Generates {@code outputs} for a file into the configured store. With the pack store, a file
+     * whose content is already stored, e.g. a copy, is linked to it instead of being generated
+     * again, and reported as skipped. Quarantined files get their placeholder straight away.
+     */
+    private ThumbnailJob.FileStatus generateFile(File file, ThumbnailSource source,
+            ThumbnailHandler handler, List<ThumbnailRendition> outputs) throws IOException {
+        String contentHash = null;
+        RenditionOutput output;
+        if (packStore.isEnabled()) {
+            contentHash = ThumbnailManifest.hash(file);
+            if (packStore.containsAll(contentHash, outputs)) {
+                logger.debug("Thumbnails of {} already stored for identical content", file);
+                packStore.link(file, contentHash);
+                return ThumbnailJob.FileStatus.SKIPPED;
+            }
+            output = new PackOutput(file.getName(), source.contentType(), outputs);
+        } else {
+            output = new FileOutput(file, source.contentType(), outputs);
         }
-        // Construct thumbnail name
-        String thumbName = THUMBNAIL_PREFIX + baseName + "." + extension;
-        return Paths.get(originalFile.getParent(), thumbName);
+        ThumbnailJob.FileStatus status;
+        if (handler != null && quarantine.isQuarantined(file)) {
+            logger.debug("{} is quarantined, using a placeholder", file);
+            metrics.recordFallback(source.contentType(), "quarantined");
+            generateDefaultThumbnail(output);
+            status = ThumbnailJob.FileStatus.FALLBACK;
+            metrics.recordResult(source.contentType(), status);
+        } else {
+            status = generateThumbnail(source, handler, output);
+            if (output.failure != null) {
+                quarantine.recordFailure(file, output.failure);
+            } else if (status == ThumbnailJob.FileStatus.GENERATED) {
+                quarantine.clear(file);
+            }
+        }
+        if (contentHash != null && status != ThumbnailJob.FileStatus.FAILED) {
+            long start = System.nanoTime();
+            packStore.put(file, contentHash, ((PackOutput) output).encoded);
+            metrics.recordStage(ThumbnailMetrics.Stage.WRITE, source.contentType(),
+                    System.nanoTime() - start);
+        }
+        // Only outcomes a rerun would repeat: real thumbnails, and placeholders no attempt failed
+        // for (unsupported types, quarantined files). A placeholder after a failure is retried.
+        boolean settled = status == ThumbnailJob.FileStatus.GENERATED
+                || (status == ThumbnailJob.FileStatus.FALLBACK && output.failure == null);
+        if (settled && contentHash == null && outputs.equals(renditions)) {
+            manifest.record(file, outputSpec());
+        }
+        return status;
+    }
+
+    public boolean isConfigured(ThumbnailRendition rendition) {
+        return renditions.contains(rendition);
+    }
+
+    /**
+     * Renders one rendition of {@code file} without storing it, for sizes that are not configured.
+     */
+    public CompletableFuture<EncodedThumbnail> render(File file, ThumbnailRendition rendition,
+            ThumbnailExecutionEngine.Lane lane) throws IOException {
+        return render(contentTypeDetector.open(file), rendition, lane);
+    }
+
+    /**
+     * Generates one rendition of an uploaded source and returns the encoded bytes, without writing
+     * anything next to a file. The source is closed once generation finishes.
+     */
+    public CompletableFuture<EncodedThumbnail> render(ThumbnailSource source,
+            ThumbnailRendition rendition) {
+        return render(source, rendition, ThumbnailExecutionEngine.Lane.INTERACTIVE);
     }
 
-    private void generatePdfThumbnail(File pdfFile) throws IOException {
-        try (PDDocument document = PDDocument.load(pdfFile)) {
-            if (document.isEncrypted()) {
-                // Try empty password first
+    public CompletableFuture<EncodedThumbnail> render(ThumbnailSource source,
+            ThumbnailRendition rendition, ThumbnailExecutionEngine.Lane lane) {
+        ThumbnailHandler handler = handlerRegistry.find(source.contentType()).orElse(null);
+        ThumbnailExecutionEngine.WorkerPool pool = handler == null
+                ? ThumbnailExecutionEngine.WorkerPool.IMAGE : handler.workerPool();
+        try {
+            return executionEngine.submit(pool, lane, () -> {
                 try {
-                    document.setAllSecurityToBeRemoved(true);
-                    PDFRenderer renderer = new PDFRenderer(document);
-                    BufferedImage image = renderer.renderImageWithDPI(0, 150);
-                    saveThumbnail(image, pdfFile, "jpg");
-                } catch (Exception e) {
-                    logger.info("Password-protected PDF: ", pdfFile.getName(),
-                            " - generating text preview");
-                    generateTextPreviewThumbnail(pdfFile, extractTextFromPdf(document));
+                    StreamOutput output = new StreamOutput(source.name(), source.contentType(),
+                            rendition);
+                    ThumbnailJob.FileStatus status = generateThumbnail(source, handler, output);
+                    if (status == ThumbnailJob.FileStatus.FAILED || output.result == null) {
+                        throw new IOException("Failed to generate thumbnail for " + source.name());
+                    }
+                    return output.result;
+                } finally {
+                    closeQuietly(source);
                 }
-            } else {
-                PDFRenderer renderer = new PDFRenderer(document);
-                BufferedImage image = renderer.renderImageWithDPI(0, 150);
-                saveThumbnail(image, pdfFile, "jpg");
-            }
-        } catch (InvalidPasswordException e) {
-            logger.info("Password-protected PDF: ", pdfFile.getName(),
-                    " - generating text preview");
-            generateTextPreviewThumbnail(pdfFile, "Password Protected\nContent Not Accessible");
+            });
+        } catch (RuntimeException e) {
+            closeQuietly(source);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
-    private String extractTextFromPdf(PDDocument document) throws IOException {
-        PDFTextStripper stripper = new PDFTextStripper();
-        String text = stripper.getText(document);
-        return text.length() > 200 ? text.substring(0, 200) + "..." : text;
+    // The thumbnail written for this rendition, in its format or the PNG fallback, if still fresh
+    private Path findFreshThumbnail(File file, ThumbnailRendition rendition) throws IOException {
+        long sourceModified = file.lastModified();
+        for (String format : List.of(rendition.formatFor("jpg"), rendition.formatFor("png"),
+                "png")) {
+            Path path = getThumbnailPath(file, rendition, format);
+            if (Files.isRegularFile(path)
+                    && Files.getLastModifiedTime(path).toMillis() >= sourceModified) {
+                return path;
+            }
+        }
+        return null;
     }
 
-    private void generateDocumentThumbnail(File documentFile, String mimeType) throws IOException {
-        try {
-            BufferedImage image;
+    // Identifies everything that affects the output, so a config change invalidates the manifest
+    private String outputSpec() {
+        return renditions.toString();
+    }
 
-            if (mimeType.equals(
-                    "application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
-                image = renderDocxToImage(documentFile);
-            } else if (mimeType.equals("application/msword")) {
-                image = renderDocToImage(documentFile);
-            } else {
-                throw new IOException("Unsupported document type: " + mimeType);
+    private boolean thumbnailExists(File file) {
+        for (ThumbnailRendition rendition : renditions) {
+            if (!Files.exists(getThumbnailPath(file, rendition, rendition.formatFor("jpg")))
+                    && !Files.exists(getThumbnailPath(file, rendition, "png"))) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            saveThumbnail(image, documentFile, "jpg");
+    private ThumbnailJob.FileStatus generateThumbnail(ThumbnailSource source,
+            ThumbnailHandler handler, RenditionOutput output) {
+        String type = source.contentType();
+        ThumbnailJob.FileStatus status = ThumbnailJob.FileStatus.FAILED;
+        try {
+            metrics.recordSource(type, source.size());
+            if (handler == null) {
+                logger.debug("No handler for {} ({})", source.name(), type);
+                metrics.recordFallback(type, "unsupported");
+                generateDefaultThumbnail(output);
+                status = ThumbnailJob.FileStatus.FALLBACK;
+                return status;
+            }
+            long admitStart = System.nanoTime();
+            AdmissionController.Permit permit =
+                    admission.admit(handler.estimateMemory(source, output.renditions()));
+            metrics.recordStage(ThumbnailMetrics.Stage.ADMIT, type,
+                    System.nanoTime() - admitStart);
+            if (permit == null) {
+                // Too large even at reduced resolution; a placeholder beats running out of heap
+                logger.warn("{} exceeds the per-job memory budget, using a placeholder",
+                        source.name());
+                metrics.recordAdmission(type, "placeholder");
+                metrics.recordFallback(type, "memory");
+                generateDefaultThumbnail(output);
+                status = ThumbnailJob.FileStatus.FALLBACK;
+                return status;
+            }
+            // An abandoned handler keeps its share of the budget until it actually stops; its
+            // runner releases the permit then
+            HandlerOutput lastOutput = null;
+            try {
+                if (permit.reduced()) {
+                    logger.debug("Generating {} at reduced resolution within {} bytes",
+                            source.name(), permit.bytes());
+                    metrics.recordAdmission(type, "reduced");
+                }
+                output.memoryLimit = permit.bytes();
+                int attempts = 0;
+                while (true) {
+                    attempts++;
+                    long start = System.nanoTime();
+                    long outputNanos = output.outputNanos;
+                    HandlerOutput handlerOutput = new HandlerOutput(output);
+                    lastOutput = handlerOutput;
+                    try {
+                        deadlines.run(handler, source.name(),
+                                () -> handler.generate(source, handlerOutput),
+                                () -> {
+                                    // Cut off reads and late writes of the abandoned handler
+                                    handlerOutput.cancelled = true;
+                                    closeQuietly(source);
+                                }, permit);
+                        status = ThumbnailJob.FileStatus.GENERATED; // Success
+                        return status;
+                    } catch (IOException e) {
+                        if (!retryPolicy.shouldRetry(e, attempts)) {
+                            throw e;
+                        }
+                        long backoff = retryPolicy.backoffMillis(attempts);
+                        metrics.recordRetry(type);
+                        logger.warn("Attempt {} for {} failed transiently, retrying in {} ms: {}",
+                                attempts, source.name(), backoff, e.toString());
+                        Thread.sleep(backoff);
+                    } finally {
+                        // Handler time, less the output's resizing, encoding and writing
+                        metrics.recordStage(ThumbnailMetrics.Stage.RENDER, type,
+                                System.nanoTime() - start - (output.outputNanos - outputNanos));
+                    }
+                }
+            } finally {
+                if (lastOutput == null || !lastOutput.cancelled) {
+                    permit.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting to generate {}", source.name());
+        } catch (HandlerDeadlines.DeadlineExceededException e) {
+            logger.warn("{}, using a placeholder", e.getMessage());
+            output.failure = e;
+            metrics.recordFallback(type, "deadline");
+            try {
+                generateDefaultThumbnail(output);
+                status = ThumbnailJob.FileStatus.FALLBACK;
+            } catch (IOException ex) {
+                logger.error("Failed to generate default thumbnail for {}", source.name(), ex);
+            }
         } catch (Exception e) {
-            logger.warn("Document rendering failed, falling back to text preview", e);
-            generateTextPreviewThumbnail(documentFile,
-                    extractTextFromDocument(documentFile, mimeType));
+            logger.error("Failed to generate thumbnail for {}", source.name(), e);
+            output.failure = e;
+            metrics.recordFallback(type, "error");
+            try {
+                generateDefaultThumbnail(output);
+                status = ThumbnailJob.FileStatus.FALLBACK;
+            } catch (IOException ex) {
+                logger.error("Failed to generate default thumbnail for {}", source.name(), ex);
+            }
+        } finally {
+            metrics.recordResult(type, status);
         }
+        return status;
     }
 
-    private BufferedImage renderDocxToImage(File docxFile) throws IOException {
-        try (XWPFDocument doc = new XWPFDocument(Files.newInputStream(docxFile.toPath()))) {
-            // Create PDF in memory
-            ByteArrayOutputStream pdfOut = new ByteArrayOutputStream();
-            PdfOptions options = PdfOptions.create();
-            PdfConverter.getInstance().convert(doc, pdfOut, options);
-
-            // Render first page of PDF to image
-            try (PDDocument pdfDoc = PDDocument.load(pdfOut.toByteArray())) {
-                PDFRenderer renderer = new PDFRenderer(pdfDoc);
-                return renderer.renderImageWithDPI(0, 150);
-            }
+    private static void closeQuietly(ThumbnailSource source) {
+        try {
+            source.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close {}", source.name(), e);
         }
     }
 
-    private BufferedImage renderDocToImage(File docFile) throws IOException {
-        try (HWPFDocument doc = new HWPFDocument(Files.newInputStream(docFile.toPath()))) {
-            // Extract text and create simple preview
-            String text = doc.getDocumentText();
-            return createTextImage("DOC Preview", text);
+    private Path getThumbnailPath(File originalFile, ThumbnailRendition rendition,
+            String extension) {
+        return getThumbnailPath(originalFile, rendition.suffix(), extension);
+    }
+
+    private Path getThumbnailPath(File originalFile, String suffix, String extension) {
+        // Construct thumbnail name, e.g. thumb_photo.jpg or thumb_photo_small.jpg
+        String thumbName = THUMBNAIL_PREFIX + thumbnailBaseName(originalFile.getName()) + suffix
+                + "." + extension;
+        return Paths.get(originalFile.getParent(), thumbName);
+    }
+
+    // Filename without extension, made safe for use in thumbnail names
+    private static String thumbnailBaseName(String fileName) {
+        String baseName = fileName.replaceAll("[^a-zA-Z0-9.-]", "_");
+        int dotIndex = baseName.lastIndexOf('.');
+        if (dotIndex > 0) {
+            baseName = baseName.substring(0, dotIndex);
         }
+        return baseName;
+    }
+
+    // Whether a file name is one of our outputs, or a temp file on its way to becoming one
+    static boolean isThumbnailName(String fileName) {
+        return fileName.startsWith(THUMBNAIL_PREFIX);
     }
 
-    private String extractTextFromDocument(File file, String mimeType) throws IOException {
-        if (mimeType.equals(
-                "application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
-            try (XWPFDocument doc = new XWPFDocument(Files.newInputStream(file.toPath()))) {
-                return doc.getParagraphs().stream().map(XWPFParagraph::getText)
-                        .collect(Collectors.joining("\n"));
+    /**
+     * Removes the thumbnails and storyboards of a source that no longer exists, including ad-hoc
+     * sizes generated over HTTP. Names still used by another file in the same directory, e.g.
+     * {@code photo.png} next to a deleted {@code photo.jpg}, are kept.
+     */
+    public void deleteThumbnails(File file) throws IOException {
+        quarantine.clear(file);
+        if (packStore.isEnabled()) {
+            packStore.remove(file);
+            return;
+        }
+        manifest.remove(file);
+        Path dir = file.toPath().toAbsolutePath().getParent();
+        if (dir == null || !Files.isDirectory(dir)) {
+            return;
+        }
+        String baseName = thumbnailBaseName(file.getName());
+        Set<String> kept = new HashSet<>();
+        List<Path> candidates = new ArrayList<>();
+        Pattern ownNames = Pattern.compile(Pattern.quote(THUMBNAIL_PREFIX + baseName)
+                + "(_\\d+x\\d+|" + VideoThumbnailHandler.STORYBOARD_SUFFIX
+                + ")?\\.(jpg|png|vtt)");
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                if (!isThumbnailName(name)) {
+                    if (!child.equals(file.toPath().toAbsolutePath())) {
+                        kept.addAll(thumbnailNames(child.toFile()));
+                    }
+                } else if (ownNames.matcher(name).matches()) {
+                    candidates.add(child);
+                }
             }
-        } else if (mimeType.equals("application/msword")) {
-            try (HWPFDocument doc = new HWPFDocument(Files.newInputStream(file.toPath()))) {
-                return doc.getDocumentText();
+        }
+        candidates.addAll(thumbnailNames(file).stream().map(dir::resolve).toList());
+        for (Path candidate : candidates) {
+            if (!kept.contains(candidate.getFileName().toString())
+                    && Files.deleteIfExists(candidate)) {
+                logger.info("Deleted thumbnail of removed source: {}", candidate);
             }
         }
-        return "No text extracted";
     }
 
-    private BufferedImage createTextImage(String title, String content) {
-        BufferedImage image =
-                new BufferedImage(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = image.createGraphics();
+    // Names the configured renditions of a file can be written under
+    private List<String> thumbnailNames(File file) {
+        List<String> names = new ArrayList<>();
+        for (ThumbnailRendition rendition : renditions) {
+            for (String format : List.of("jpg", "png")) {
+                names.add(getThumbnailPath(file, rendition, format).getFileName().toString());
+            }
+        }
+        return names;
+    }
 
-        // Setup background
-        g.setColor(Color.WHITE);
-        g.fillRect(0, 0, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+    private void generateDefaultThumbnail(RenditionOutput output) throws IOException {
+        output.save(textPreviewRenderer.renderPlaceholder(output.name, thumbnailWidth,
+                thumbnailHeight), "jpg");
+    }
 
-        // Draw title
-        g.setColor(Color.BLUE);
-        g.setFont(new Font("Arial", Font.BOLD, 14));
-        g.drawString(title, 10, 20);
+    // Stores one resized rendition in the given format
+    @FunctionalInterface
+    private interface RenditionWriter {
+        void write(BufferedImage thumbnail, ThumbnailRendition rendition, String format)
+                throws IOException;
+    }
 
-        // Draw content
-        g.setColor(Color.BLACK);
-        g.setFont(new Font("Arial", Font.PLAIN, 12));
-        drawWrappedText(g, content, 10, 40, THUMBNAIL_WIDTH - 20);
+    // Writes every rendition from one decoded image, each scaled from the previous when possible
+    private void saveThumbnail(BufferedImage image, String contentType, String format,
+            List<ThumbnailRendition> renditions, RenditionWriter writer) throws IOException {
+        BufferedImage source = image;
+        for (ThumbnailRendition rendition : renditions) {
+            String renditionFormat = rendition.formatFor(format);
+            long start = System.nanoTime();
+            BufferedImage scaled = thumbnailEncoder.scale(source, rendition, renditionFormat);
+            BufferedImage thumbnail = thumbnailEncoder.crop(scaled, rendition);
+            metrics.recordStage(ThumbnailMetrics.Stage.RESIZE, contentType,
+                    System.nanoTime() - start);
+            try {
+                writer.write(thumbnail, rendition, renditionFormat);
+            } catch (IOException e) {
+                if (renditionFormat.equalsIgnoreCase("png")) {
+                    throw e;
+                }
+                // Final fallback - PNG has no quality or subsampling settings to trip over
+                logger.warn("Failed to write as {}, attempting PNG fallback", renditionFormat, e);
+                writer.write(thumbnail, rendition, "png");
+            }
+            if (coversNext(scaled, image, rendition, renditions)) {
+                source = scaled;
+            }
+        }
+    }
 
-        g.dispose();
-        return image;
+    // Whether a scaled intermediate has enough pixels for the rendition after this one
+    private boolean coversNext(BufferedImage scaled, BufferedImage original,
+            ThumbnailRendition current, List<ThumbnailRendition> renditions) {
+        int index = renditions.indexOf(current);
+        if (index + 1 >= renditions.size()) {
+            return false;
+        }
+        Dimension needed = renditions.get(index + 1).scaledSize(original.getWidth(),
+                original.getHeight());
+        return scaled.getWidth() >= needed.width && scaled.getHeight() >= needed.height
+                && (scaled.getColorModel().hasAlpha() || !original.getColorModel().hasAlpha());
     }
 
-    private void generateTextPreviewThumbnail(File originalFile, String text) throws IOException {
-        BufferedImage image =
-                new BufferedImage(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, BufferedImage.TYPE_INT_RGB);
-        Graphics2D graphics = image.createGraphics();
+    private void writeThumbnail(BufferedImage thumbnail, File originalFile, String contentType,
+            ThumbnailRendition rendition, String format) throws IOException {
+        writeImage(thumbnail, getThumbnailPath(originalFile, rendition, format), contentType,
+                format);
+    }
 
-        // Set background
-        graphics.setColor(Color.LIGHT_GRAY);
-        graphics.fillRect(0, 0, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+    private void writeImage(BufferedImage thumbnail, Path outputPath, String contentType,
+            String format) throws IOException {
+        // Ensure parent directory exists
+        Files.createDirectories(outputPath.getParent());
 
-        // Set text properties
-        graphics.setColor(Color.BLACK);
-        graphics.setFont(new Font("Arial", Font.PLAIN, 12));
+        // Stream into a temp file and rename, so readers never see a half-written thumbnail
+        long start = System.nanoTime();
+        Path tmp = tempPath(outputPath);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            thumbnailEncoder.encode(thumbnail, format, out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        long encoded = System.nanoTime();
+        metrics.recordStage(ThumbnailMetrics.Stage.ENCODE, contentType, encoded - start);
+        Files.move(tmp, outputPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        metrics.recordStage(ThumbnailMetrics.Stage.WRITE, contentType,
+                System.nanoTime() - encoded);
+    }
 
-        // Draw the text with word wrapping
-        drawWrappedText(graphics, text, 10, 10, THUMBNAIL_WIDTH - 20);
+    private void writeText(CharSequence text, Path outputPath) throws IOException {
+        Files.createDirectories(outputPath.getParent());
+        Path tmp = tempPath(outputPath);
+        try {
+            Files.writeString(tmp, text, StandardCharsets.UTF_8);
+            Files.move(tmp, outputPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
 
-        graphics.dispose();
-        saveThumbnail(image, originalFile, "jpg");
+    // Per thread, in case an abandoned handler is still writing the same output
+    private static Path tempPath(Path outputPath) {
+        return outputPath.resolveSibling(outputPath.getFileName() + "."
+                + Thread.currentThread().getId() + ".tmp");
     }
 
-    private void drawWrappedText(Graphics2D g, String text, int x, int y, int maxWidth) {
-        FontMetrics metrics = g.getFontMetrics();
-        String[] words = text.split(" ");
-        StringBuilder currentLine = new StringBuilder();
+    /**
+     * Output for one source, handed to its handler. Subclasses decide where encoded renditions go.
+     */
+    private abstract class RenditionOutput implements ThumbnailOutput {
+        final String name;
+        final String contentType;
+        final List<ThumbnailRendition> outputs;
+        // Time spent in save and writeImage, so it can be told apart from the handler's own work
+        long outputNanos;
+        // Share of the memory budget the job was admitted with
+        long memoryLimit = Long.MAX_VALUE;
+        // Why the handler failed, when the thumbnail is a placeholder because of it
+        volatile Exception failure;
+
+        RenditionOutput(String name, String contentType, List<ThumbnailRendition> outputs) {
+            this.name = name;
+            this.contentType = contentType;
+            this.outputs = outputs;
+        }
 
-        for (String word : words) {
-            String testLine = currentLine + (currentLine.length() > 0 ? " " : "") + word;
-            int testWidth = metrics.stringWidth(testLine);
+        @Override
+        public List<ThumbnailRendition> renditions() {
+            return outputs;
+        }
 
-            if (testWidth > maxWidth && currentLine.length() > 0) {
-                g.drawString(currentLine.toString(), x, y);
-                y += metrics.getHeight();
-                currentLine = new StringBuilder(word);
-            } else {
-                currentLine.append(currentLine.length() > 0 ? " " : "").append(word);
+        @Override
+        public long memoryLimit() {
+            return memoryLimit;
+        }
+
+        @Override
+        public final void save(BufferedImage image, String format) throws IOException {
+            long start = System.nanoTime();
+            metrics.recordPixels(contentType, (long) image.getWidth() * image.getHeight());
+            try {
+                write(image, format);
+            } finally {
+                outputNanos += System.nanoTime() - start;
             }
         }
 
-        if (currentLine.length() > 0) {
-            g.drawString(currentLine.toString(), x, y);
+        // Resizes, encodes and stores every rendition of a decoded image
+        abstract void write(BufferedImage image, String format) throws IOException;
+
+        @Override
+        public void saveTextPreview(String text) throws IOException {
+            save(textPreviewRenderer.renderText(text, thumbnailWidth, thumbnailHeight), "jpg");
         }
-    }
 
-    private void generateExcelThumbnail(File file) throws IOException {
-        try {
-            List<String> previewLines;
-            if (file.getName().toLowerCase().endsWith(".csv")) {
-                previewLines = readCsvPreview(file, 3);
-            } else {
-                previewLines = readExcelPreview(file, 3);
-            }
-            BufferedImage image = createDataPreviewImage(file.getName(), previewLines);
-            saveThumbnail(image, file, "jpg");
-        } catch (Exception e) {
-            generateDefaultThumbnail(file);
+        @Override
+        public void saveDocumentPreview(String title, String text) throws IOException {
+            save(textPreviewRenderer.renderDocument(title, text, thumbnailWidth, thumbnailHeight),
+                    "jpg");
+        }
+
+        @Override
+        public void saveDataPreview(List<String> lines) throws IOException {
+            save(textPreviewRenderer.renderData(name, lines, thumbnailWidth, thumbnailHeight),
+                    "jpg");
         }
     }
 
-    private List<String> readExcelPreview(File excelFile, int maxLines) throws IOException {
-        List<String> lines = new ArrayList<>();
+    // Writes thumbnail files next to the source
+    private class FileOutput extends RenditionOutput {
+        private final File file;
+
+        FileOutput(File file, String contentType, List<ThumbnailRendition> outputs) {
+            super(file.getName(), contentType, outputs);
+            this.file = file;
+        }
 
-        try (FileInputStream fis = new FileInputStream(excelFile);
-                Workbook workbook = WorkbookFactory.create(fis)) {
+        @Override
+        void write(BufferedImage image, String format) throws IOException {
+            saveThumbnail(image, contentType, format, outputs,
+                    (thumbnail, rendition, renditionFormat) -> writeThumbnail(thumbnail, file,
+                            contentType, rendition, renditionFormat));
+        }
 
-            Sheet sheet = workbook.getSheetAt(0);
-            // Add header
-            Row headerRow = sheet.getRow(0);
-            if (headerRow != null) {
-                lines.add(getExcelRowAsString(headerRow));
-            }
+        @Override
+        public Path sidecarPath(String suffix, String extension) {
+            return getThumbnailPath(file, suffix, extension);
+        }
 
-            // Add data rows
-            for (int i = 1; i <= maxLines && i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row != null) {
-                    lines.add(getExcelRowAsString(row));
-                }
+        @Override
+        public void writeImage(BufferedImage image, Path path, String format)
+                throws IOException {
+            long start = System.nanoTime();
+            try {
+                ThumbnailService.this.writeImage(image, path, contentType, format);
+            } finally {
+                outputNanos += System.nanoTime() - start;
             }
         }
-        return lines;
-    }
 
-    private String getExcelRowAsString(Row row) {
-        StringBuilder sb = new StringBuilder();
-        for (Cell cell : row) {
-            switch (cell.getCellType()) {
-                case STRING -> sb.append(cell.getStringCellValue());
-                case NUMERIC -> sb.append(cell.getNumericCellValue());
-                case BOOLEAN -> sb.append(cell.getBooleanCellValue());
-                case FORMULA -> {
-                    switch (cell.getCachedFormulaResultType()) {
-                        case STRING -> sb.append(cell.getStringCellValue());
-                        case NUMERIC -> sb.append(cell.getNumericCellValue());
-                        case BOOLEAN -> sb.append(cell.getBooleanCellValue());
-                        default -> sb.append(" ");
-                    }
-                }
-                default -> sb.append(" ");
+        @Override
+        public void writeText(CharSequence text, Path path) throws IOException {
+            long start = System.nanoTime();
+            try {
+                ThumbnailService.this.writeText(text, path);
+            } finally {
+                outputNanos += System.nanoTime() - start;
             }
         }
-        return cleanCsvLine(sb.toString());
     }
 
-    private List<String> readCsvPreview(File csvFile, int maxLines)
-            throws IOException, com.opencsv.exceptions.CsvValidationException {
-        List<String> lines = new ArrayList<>();
+    // What a handler writes to; once it is abandoned at its deadline, anything late is refused
+    private static class HandlerOutput implements ThumbnailOutput {
+        private final RenditionOutput target;
+        volatile boolean cancelled;
 
-        try (CSVReader reader = new CSVReader(new FileReader(csvFile))) {
-            String[] nextLine;
-            int lineCount = 0;
-            try {
-                while ((nextLine = reader.readNext()) != null && lineCount < maxLines) {
-                    lines.add(String.join(", ", nextLine));
-                    lineCount++;
-                }
-            } catch (com.opencsv.exceptions.CsvValidationException e) {
-                throw new IOException("Failed to parse CSV file: " + csvFile.getName(), e);
-            }
+        HandlerOutput(RenditionOutput target) {
+            this.target = target;
         }
-        return lines.stream().map(this::cleanCsvLine).collect(Collectors.toList());
-    }
 
-    private String cleanCsvLine(String line) {
-        // 1. Trim and limit length
-        line = line.trim();
-        if (line.length() > 50) {
-            line = line.substring(0, 47) + "...";
+        private void check() throws IOException {
+            if (cancelled) {
+                throw new InterruptedIOException("Handler ran past its deadline");
+            }
         }
 
-        // 2. Remove special characters that break rendering
-        line = line.replaceAll("[^\\x20-\\x7E]", "");
+        @Override
+        public List<ThumbnailRendition> renditions() {
+            return target.renditions();
+        }
 
-        // 3. Replace multiple spaces with single space
-        return line.replaceAll("\\s+", " ");
-    }
+        @Override
+        public long memoryLimit() {
+            return target.memoryLimit();
+        }
 
-    private BufferedImage createDataPreviewImage(String filename, List<String> lines) {
-        BufferedImage image =
-                new BufferedImage(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = image.createGraphics();
+        @Override
+        public void save(BufferedImage image, String format) throws IOException {
+            check();
+            target.save(image, format);
+        }
 
-        // Set anti-aliasing for better text quality
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
-                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        @Override
+        public void saveTextPreview(String text) throws IOException {
+            check();
+            target.saveTextPreview(text);
+        }
 
-        // Draw background
-        g.setColor(new Color(240, 240, 240)); // Light gray
-        g.fillRect(0, 0, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+        @Override
+        public void saveDocumentPreview(String title, String text) throws IOException {
+            check();
+            target.saveDocumentPreview(title, text);
+        }
 
-        // Draw header
-        g.setColor(new Color(0, 82, 165)); // Dark blue
-        g.fillRect(0, 0, THUMBNAIL_WIDTH, 25);
-        g.setColor(Color.WHITE);
-        g.setFont(new Font("Arial", Font.BOLD, 12));
-        g.drawString(truncateFilename(filename), 5, 18);
+        @Override
+        public void saveDataPreview(List<String> lines) throws IOException {
+            check();
+            target.saveDataPreview(lines);
+        }
 
-        // Draw data rows
-        g.setColor(Color.BLACK);
-        g.setFont(new Font("Courier New", Font.PLAIN, 10));
+        @Override
+        public boolean supportsSidecars() {
+            return target.supportsSidecars();
+        }
 
-        int y = 40;
-        for (String line : lines) {
-            if (y > THUMBNAIL_HEIGHT - 15)
-                break;
-            g.drawString(line, 5, y);
-            y += 15;
+        @Override
+        public Path sidecarPath(String suffix, String extension) {
+            return target.sidecarPath(suffix, extension);
         }
 
-        // Draw footer
-        g.setColor(Color.GRAY);
-        g.setFont(new Font("Arial", Font.PLAIN, 10));
-        g.drawString(lines.size() + " rows shown", 5, THUMBNAIL_HEIGHT - 5);
+        @Override
+        public void writeImage(BufferedImage image, Path path, String format)
+                throws IOException {
+            check();
+            target.writeImage(image, path, format);
+        }
 
-        g.dispose();
-        return image;
+        @Override
+        public void writeText(CharSequence text, Path path) throws IOException {
+            check();
+            target.writeText(text, path);
+        }
     }
 
-    private String truncateFilename(String filename) {
-        if (filename.length() > 20) {
-            return filename.substring(0, 17) + "...";
+    // Encodes every rendition into memory, for the pack store to write together with the source
+    private class PackOutput extends RenditionOutput {
+        // Concurrent, as an abandoned handler may still be saving while its placeholder is drawn
+        private final Map<ThumbnailRendition, EncodedThumbnail> encoded =
+                new ConcurrentHashMap<>();
+
+        PackOutput(String name, String contentType, List<ThumbnailRendition> outputs) {
+            super(name, contentType, outputs);
         }
-        return filename;
-    }
 
-    private void generateDefaultThumbnail(File file) throws IOException {
-        // Create an image with file icon and name
-        BufferedImage image =
-                new BufferedImage(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, BufferedImage.TYPE_INT_RGB);
-        Graphics2D graphics = image.createGraphics();
+        @Override
+        void write(BufferedImage image, String format) throws IOException {
+            saveThumbnail(image, contentType, format, outputs,
+                    (thumbnail, rendition, renditionFormat) -> {
+                        long start = System.nanoTime();
+                        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                        thumbnailEncoder.encode(thumbnail, renditionFormat, buffer);
+                        metrics.recordStage(ThumbnailMetrics.Stage.ENCODE, contentType,
+                                System.nanoTime() - start);
+                        encoded.put(rendition,
+                                new EncodedThumbnail(buffer.toByteArray(), renditionFormat));
+                    });
+        }
 
-        // Set background
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, 0, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+        @Override
+        public boolean supportsSidecars() {
+            return false;
+        }
 
-        // Draw border
-        graphics.setColor(Color.GRAY);
-        graphics.drawRect(0, 0, THUMBNAIL_WIDTH - 1, THUMBNAIL_HEIGHT - 1);
+        @Override
+        public Path sidecarPath(String suffix, String extension) {
+            throw new UnsupportedOperationException("No sidecar outputs in the pack store");
+        }
 
-        // Set text properties
-        graphics.setColor(Color.BLACK);
-        graphics.setFont(new Font("Arial", Font.BOLD, 14));
+        @Override
+        public void writeImage(BufferedImage image, Path path, String format) {
+            throw new UnsupportedOperationException("No sidecar outputs in the pack store");
+        }
 
-        // Draw file icon (simple rectangle)
-        graphics.setColor(new Color(200, 230, 255));
-        graphics.fillRect(THUMBNAIL_WIDTH / 4, THUMBNAIL_HEIGHT / 4, THUMBNAIL_WIDTH / 2,
-                THUMBNAIL_HEIGHT / 3);
-        graphics.setColor(Color.BLUE);
-        graphics.drawRect(THUMBNAIL_WIDTH / 4, THUMBNAIL_HEIGHT / 4, THUMBNAIL_WIDTH / 2,
-                THUMBNAIL_HEIGHT / 3);
+        @Override
+        public void writeText(CharSequence text, Path path) {
+            throw new UnsupportedOperationException("No sidecar outputs in the pack store");
+        }
+    }
+
+    // Encodes a single rendition into memory, for responses that carry the image itself
+    private class StreamOutput extends RenditionOutput {
+        private EncodedThumbnail result;
+
+        StreamOutput(String name, String contentType, ThumbnailRendition rendition) {
+            super(name, contentType, List.of(rendition));
+        }
 
-        // Draw file name (truncated if needed)
-        String name = file.getName();
-        FontMetrics metrics = graphics.getFontMetrics();
-        if (metrics.stringWidth(name) > THUMBNAIL_WIDTH - 20) {
-            while (metrics.stringWidth(name + "...") > THUMBNAIL_WIDTH - 20 && name.length() > 3) {
-                name = name.substring(0, name.length() - 1);
+        @Override
+        void write(BufferedImage image, String format) throws IOException {
+            ThumbnailRendition rendition = outputs.get(0);
+            String renditionFormat = rendition.formatFor(format);
+            long start = System.nanoTime();
+            BufferedImage thumbnail = thumbnailEncoder.crop(
+                    thumbnailEncoder.scale(image, rendition, renditionFormat), rendition);
+            long resized = System.nanoTime();
+            metrics.recordStage(ThumbnailMetrics.Stage.RESIZE, contentType, resized - start);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                thumbnailEncoder.encode(thumbnail, renditionFormat, buffer);
+            } catch (IOException e) {
+                if (renditionFormat.equalsIgnoreCase("png")) {
+                    throw e;
+                }
+                logger.warn("Failed to encode as {}, attempting PNG fallback", renditionFormat, e);
+                buffer.reset();
+                renditionFormat = "png";
+                thumbnailEncoder.encode(thumbnail, renditionFormat, buffer);
             }
-            name = name + "...";
+            metrics.recordStage(ThumbnailMetrics.Stage.ENCODE, contentType,
+                    System.nanoTime() - resized);
+            result = new EncodedThumbnail(buffer.toByteArray(), renditionFormat);
         }
-        graphics.drawString(name, (THUMBNAIL_WIDTH - metrics.stringWidth(name)) / 2,
-                THUMBNAIL_HEIGHT * 3 / 4);
-        // Draw "No Preview" text
-        graphics.setFont(new Font("Arial", Font.ITALIC, 12));
-        String noPreview = DEFAULT_THUMBNAIL_TEXT;
-        int textWidth = metrics.stringWidth(noPreview);
-        graphics.drawString(noPreview, (THUMBNAIL_WIDTH - textWidth) / 2, THUMBNAIL_HEIGHT * 4 / 5);
-        graphics.dispose();
-        saveThumbnail(image, file, "jpg");
-    }
 
-    private void saveThumbnail(BufferedImage image, File originalFile, String format)
-            throws IOException {
-        Path outputPath = getThumbnailPath(originalFile, format);
+        @Override
+        public boolean supportsSidecars() {
+            return false;
+        }
 
-        // Ensure parent directory exists
-        Files.createDirectories(outputPath.getParent());
+        @Override
+        public Path sidecarPath(String suffix, String extension) {
+            throw new UnsupportedOperationException("No sidecar outputs for streamed thumbnails");
+        }
 
-        // Try with Thumbnailator first (simpler API)
-        try {
-            Thumbnails.of(image).size(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT).outputFormat(format)
-                    .toFile(outputPath.toFile());
-            return;
-        } catch (IOException e) {
-            logger.warn("Thumbnailator failed to write image, falling back to ImageIO");
+        @Override
+        public void writeImage(BufferedImage image, Path path, String format) {
+            throw new UnsupportedOperationException("No sidecar outputs for streamed thumbnails");
         }
 
-        // Fallback to ImageIO with explicit format handling
-        try {
-            if (!ImageIO.write(image, format, outputPath.toFile())) {
-                throw new IOException("No suitable writer found for format: " + format);
-            }
-        } catch (IOException e) {
-            // Final fallback - convert to PNG if JPG fails
-            if (!format.equalsIgnoreCase("png")) {
-                logger.warn("Failed to write as {}, attempting PNG fallback", format);
-                saveThumbnail(image, originalFile, "png");
-            } else {
-                throw e;
-            }
+        @Override
+        public void writeText(CharSequence text, Path path) {
+            throw new UnsupportedOperationException("No sidecar outputs for streamed thumbnails");
         }
     }
-
 }
@@ -0,0 +1,179 @@
+package com.techpool.tech;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source opened once for detection and generation: either a file with its open channel, or an
+ * upload held in memory. The header read during detection travels with it, so handlers do not
+ * reopen the file just to look at it. Handlers that need a path for a library API can still use
+ * {@link #file()}; for in-memory sources that writes a temporary copy on first use.
+ */
+public final class ThumbnailSource implements Closeable {
+    private final String name;
+    private final FileChannel channel;
+    private final ByteBuffer data;
+    private final ByteBuffer header;
+    private final String contentType;
+    private File file;
+    // Deleted on close: uploads spooled to disk, or in-memory sources spilled by file()
+    private boolean temporary;
+
+    private ThumbnailSource(String name, File file, FileChannel channel, ByteBuffer data,
+            ByteBuffer header, String contentType, boolean temporary) {
+        this.name = name;
+        this.file = file;
+        this.channel = channel;
+        this.data = data == null ? null : data.asReadOnlyBuffer();
+        this.header = header.asReadOnlyBuffer();
+        this.contentType = contentType;
+        this.temporary = temporary;
+    }
+
+    static ThumbnailSource ofFile(String name, File file, FileChannel channel, ByteBuffer header,
+            String contentType, boolean temporary) {
+        return new ThumbnailSource(name, file, channel, null, header, contentType, temporary);
+    }
+
+    static ThumbnailSource ofBytes(String name, ByteBuffer data, ByteBuffer header,
+            String contentType) {
+        return new ThumbnailSource(name, null, null, data, header, contentType, false);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public boolean isInMemory() {
+        return data != null;
+    }
+
+    public long size() throws IOException {
+        return data != null ? data.limit() : channel.size();
+    }
+
+    /**
+     * The open channel over the whole file, or null for an in-memory source. Prefer positional
+     * reads (or {@link #openStream()}) so handlers never depend on its position; the source
+     * closes it.
+     */
+    public FileChannel channel() {
+        return channel;
+    }
+
+    /**
+     * The first bytes of the source, as read during detection.
+     */
+    public ByteBuffer header() {
+        return header.duplicate();
+    }
+
+    /**
+     * Reads into {@code target} starting at {@code position}, like
+     * {@link FileChannel#read(ByteBuffer, long)}.
+     */
+    public int read(ByteBuffer target, long position) throws IOException {
+        if (data == null) {
+            return channel.read(target, position);
+        }
+        if (position >= data.limit()) {
+            return -1;
+        }
+        ByteBuffer slice = data.duplicate();
+        slice.position((int) position);
+        int n = Math.min(slice.remaining(), target.remaining());
+        slice.limit(slice.position() + n);
+        target.put(slice);
+        return n;
+    }
+
+    /**
+     * A stream over the source from the start. Reads are positional, so several streams can be
+     * used one after another without rewinding; closing the stream leaves the source open.
+     */
+    public InputStream openStream() {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                int n = ThumbnailSource.this.read(ByteBuffer.wrap(buffer, offset, length),
+                        position);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = Math.max(0, Math.min(n, size() - position));
+                position += skipped;
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * The file behind this source. An in-memory source is written to a temporary file the first
+     * time this is called, for tools such as ffmpeg that can only read from a path.
+     */
+    public synchronized File file() throws IOException {
+        if (file == null) {
+            Path spill = Files.createTempFile("thumbnail-source-", suffix());
+            try (FileChannel out = FileChannel.open(spill, StandardOpenOption.WRITE)) {
+                ByteBuffer remaining = data.duplicate();
+                remaining.position(0);
+                while (remaining.hasRemaining()) {
+                    out.write(remaining);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(spill);
+                throw e;
+            }
+            file = spill.toFile();
+            temporary = true;
+        }
+        return file;
+    }
+
+    // Keeps the extension for tools that look at it; upload names are not trusted beyond that
+    private String suffix() {
+        int dot = name.lastIndexOf('.');
+        String suffix = dot < 0 ? "" : name.substring(dot);
+        return suffix.matches("\\.[A-Za-z0-9]{1,10}") ? suffix : null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            if (temporary && file != null) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+}
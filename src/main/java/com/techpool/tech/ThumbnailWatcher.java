@@ -0,0 +1,282 @@
+package com.techpool.tech;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps thumbnails in step with the configured root directories as files come and go. Events
+ * for a file are coalesced until it has been quiet for the debounce interval, so a large copy
+ * is thumbnailed once when it finishes. On startup the roots are reconciled against the
+ * thumbnails on disk and the manifest, picking up changes made while the service was down.
+ */
+@Component
+public class ThumbnailWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailWatcher.class);
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private ThumbnailManifest manifest;
+
+    @Autowired
+    private ThumbnailPackStore packStore;
+
+    @Autowired
+    private ThumbnailExecutionEngine executionEngine;
+
+    // Comma-separated directories to watch recursively; empty disables watch mode
+    @Value("${thumbnail.watch.roots:}")
+    private String rootSpec;
+
+    @Value("${thumbnail.watch.debounce-ms:2000}")
+    private long debounceMs;
+
+    @Value("${thumbnail.watch.reconcile-on-start:true}")
+    private boolean reconcileOnStart;
+
+    private final List<Path> roots = new ArrayList<>();
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    // Changed paths by the time of their latest event, in nanos; only touched by the watch thread
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+    private WatchService watchService;
+    private ThumbnailExecutionEngine.Batch batch;
+    private Thread thread;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {
+        for (String root : rootSpec.split(",")) {
+            if (!root.isBlank()) {
+                roots.add(Paths.get(root.trim()).toAbsolutePath().normalize());
+            }
+        }
+        if (roots.isEmpty()) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        batch = executionEngine.newBatch();
+        running = true;
+        thread = new Thread(this::run, "thumbnail-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (watchService == null) {
+            return;
+        }
+        running = false;
+        watchService.close();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void run() {
+        try {
+            if (reconcileOnStart) {
+                removeOrphans();
+            }
+            for (Path root : roots) {
+                // Registering walks the tree anyway; queue files too when reconciling
+                scan(root, reconcileOnStart);
+            }
+            logger.info("Watching {} for thumbnail changes", roots);
+            while (running) {
+                WatchKey key = watchService.poll(Math.max(debounceMs / 2, 50),
+                        TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handle(key);
+                }
+                flushQuiet();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Stopping
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Thumbnail watcher stopped", e);
+        }
+    }
+
+    private void handle(WatchKey key) throws InterruptedException {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null) {
+                break;
+            }
+            if (event.kind() == OVERFLOW) {
+                // Events were dropped; rescan the directory, fresh thumbnails are skipped
+                logger.warn("Watch events lost for {}, rescanning", dir);
+                scan(dir, true);
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (ThumbnailService.isThumbnailName(child.getFileName().toString())) {
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                // Files copied in before the directory was registered produced no events
+                scan(child, true);
+                continue;
+            }
+            pending.put(child, System.nanoTime());
+        }
+        if (!key.reset()) {
+            if (dir != null && !Files.exists(dir)) {
+                // Kept until forgetDirectory; a root's deletion is reported by no watched parent
+                pending.put(dir, System.nanoTime());
+            } else {
+                keys.remove(key);
+            }
+        }
+    }
+
+    // Acts on paths that have had no events for the debounce interval
+    private void flushQuiet() throws InterruptedException {
+        long cutoff = System.nanoTime() - debounceMs * 1_000_000;
+        Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entry = it.next();
+            if (entry.getValue() > cutoff) {
+                continue;
+            }
+            it.remove();
+            Path path = entry.getKey();
+            if (Files.isRegularFile(path)) {
+                submit(path);
+            } else if (!Files.exists(path)) {
+                delete(path);
+                forgetDirectory(path);
+            }
+        }
+    }
+
+    private void scan(Path dir, boolean queueFiles) throws InterruptedException {
+        List<Path> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs)
+                        throws IOException {
+                    keys.put(d.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE),
+                            d);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (queueFiles && attrs.isRegularFile()
+                            && !ThumbnailService.isThumbnailName(file.getFileName().toString())) {
+                        files.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Failed to scan {}", file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Failed to watch {}", dir, e);
+        }
+        for (Path file : files) {
+            submit(file);
+        }
+    }
+
+    private void submit(Path file) throws InterruptedException {
+        thumbnailService.submitFile(file.toFile(), thumbnailService.getRenditions(), batch,
+                (result, written) -> {
+                    if (result.status() != ThumbnailJob.FileStatus.SKIPPED) {
+                        logger.info("Watch: {} {} in {} ms", result.status(), result.path(),
+                                result.durationMs());
+                    }
+                });
+    }
+
+    private void delete(Path file) {
+        try {
+            thumbnailService.deleteThumbnails(file.toFile());
+        } catch (IOException e) {
+            logger.warn("Failed to delete thumbnails of {}", file, e);
+        }
+    }
+
+    // When a deleted path was a watched directory, drops its keys and the sources recorded under it
+    private void forgetDirectory(Path dir) {
+        boolean watched = false;
+        Iterator<Map.Entry<WatchKey, Path>> it = keys.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<WatchKey, Path> entry = it.next();
+            if (entry.getValue().startsWith(dir)) {
+                entry.getKey().cancel();
+                it.remove();
+                watched = true;
+            }
+        }
+        if (!watched) {
+            return;
+        }
+        int removed = 0;
+        for (String recorded : recordedPaths()) {
+            Path path = Paths.get(recorded);
+            if (path.startsWith(dir)) {
+                delete(path);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            logger.info("Watch: directory {} gone, dropped thumbnails of {} files", dir, removed);
+        }
+    }
+
+    private Set<String> recordedPaths() {
+        Set<String> recordedPaths = new HashSet<>(manifest.snapshot().keySet());
+        recordedPaths.addAll(packStore.sourcePaths());
+        return recordedPaths;
+    }
+
+    // Sources recorded in the manifest or pack store that were deleted while the service was down
+    private void removeOrphans() {
+        for (String recorded : recordedPaths()) {
+            Path path = Paths.get(recorded);
+            if (roots.stream().anyMatch(path::startsWith) && !Files.exists(path)) {
+                delete(path);
+            }
+        }
+    }
+}
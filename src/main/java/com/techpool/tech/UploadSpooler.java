@@ -0,0 +1,87 @@
+package com.techpool.tech;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Turns an upload into a {@link ThumbnailSource}. Small uploads stay in memory; larger ones are
+ * spooled to a temporary file that is deleted when the source closes.
+ */
+@Component
+public class UploadSpooler {
+    @Autowired
+    private ContentTypeDetector contentTypeDetector;
+
+    @Value("${thumbnail.upload.memory-threshold-kb:8192}")
+    private int memoryThresholdKb;
+
+    @Value("${thumbnail.max-size-mb:100}")
+    private long maxFileSizeMb;
+
+    /**
+     * A multipart upload, which the container has already buffered: small parts are read from
+     * memory, larger ones take over the container's temporary file instead of copying it.
+     */
+    public ThumbnailSource open(MultipartFile upload) throws IOException {
+        String name =
+                upload.getOriginalFilename() != null ? upload.getOriginalFilename() : "upload";
+        long maxBytes = maxFileSizeMb * 1024 * 1024;
+        if (upload.getSize() > maxBytes) {
+            throw new MaxUploadSizeExceededException(maxBytes);
+        }
+        if (upload.getSize() <= memoryThresholdKb * 1024L) {
+            return contentTypeDetector.open(name, ByteBuffer.wrap(upload.getBytes()));
+        }
+        File temp = Files.createTempFile("thumbnail-upload-", ".tmp").toFile();
+        try {
+            // Renames the container's file where it can
+            upload.transferTo(temp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        return contentTypeDetector.open(temp, name, true);
+    }
+
+    public ThumbnailSource spool(String name, InputStream in) throws IOException {
+        int threshold = memoryThresholdKb * 1024;
+        long maxBytes = maxFileSizeMb * 1024 * 1024;
+        byte[] head = in.readNBytes(threshold + 1);
+        if (head.length <= threshold) {
+            if (head.length > maxBytes) {
+                throw new MaxUploadSizeExceededException(maxBytes);
+            }
+            return contentTypeDetector.open(name, ByteBuffer.wrap(head));
+        }
+
+        File temp = Files.createTempFile("thumbnail-upload-", ".tmp").toFile();
+        try {
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                out.write(head);
+                long written = head.length;
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    written += read;
+                    if (written > maxBytes) {
+                        throw new MaxUploadSizeExceededException(maxBytes);
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        return contentTypeDetector.open(temp, name, true);
+    }
+}
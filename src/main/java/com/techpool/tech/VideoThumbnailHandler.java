@@ -0,0 +1,124 @@
+package com.techpool.tech;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.techpool.tech.utils.FFmpegRunner;
+
+/**
+ * Video thumbnails from a single ffmpeg frame, plus an optional storyboard sprite.
+ */
+@Component
+public class VideoThumbnailHandler implements ThumbnailHandler {
+    private static final Logger logger = LoggerFactory.getLogger(VideoThumbnailHandler.class);
+
+    private static final double SEEK_SECONDS = 1.0;
+    static final String STORYBOARD_SUFFIX = "_storyboard";
+
+    @Autowired
+    private FFmpegRunner ffmpegRunner;
+
+    @Value("${thumbnail.storyboard.enabled:false}")
+    private boolean storyboardEnabled;
+
+    @Value("${thumbnail.storyboard.frames:16}")
+    private int storyboardFrames;
+
+    @Value("${thumbnail.storyboard.columns:4}")
+    private int storyboardColumns;
+
+    @Value("${thumbnail.storyboard.tile-width:160}")
+    private int storyboardTileWidth;
+
+    @Override
+    public boolean supports(String contentType) {
+        return contentType.startsWith("video/");
+    }
+
+    @Override
+    public ThumbnailExecutionEngine.WorkerPool workerPool() {
+        return ThumbnailExecutionEngine.WorkerPool.VIDEO;
+    }
+
+    @Override
+    public AdmissionController.Estimate estimateMemory(ThumbnailSource source,
+            List<ThumbnailRendition> renditions) {
+        // ffmpeg decodes out of process; only the scaled frame and the sprite come back, each
+        // held once as piped bytes and once decoded
+        long frame = 1;
+        for (ThumbnailRendition rendition : renditions) {
+            frame = Math.max(frame, (long) rendition.width() * rendition.height());
+        }
+        long sprite = 0;
+        if (storyboardEnabled) {
+            int rows = (storyboardFrames + storyboardColumns - 1) / storyboardColumns;
+            // Tiles are at most square
+            sprite = (long) storyboardColumns * rows * storyboardTileWidth * storyboardTileWidth;
+        }
+        return AdmissionController.Estimate.fixed(8 * (frame + sprite));
+    }
+
+    @Override
+    public void generate(ThumbnailSource source, ThumbnailOutput output) throws IOException {
+        // ffmpeg seeks, scales and pipes back one frame; the renditions are all scaled from it
+        int maxWidth = 1;
+        int maxHeight = 1;
+        boolean cover = false;
+        for (ThumbnailRendition rendition : output.renditions()) {
+            maxWidth = Math.max(maxWidth, rendition.width());
+            maxHeight = Math.max(maxHeight, rendition.height());
+            cover |= rendition.fitMode() == ThumbnailRendition.FitMode.FILL;
+        }
+        BufferedImage frame = ffmpegRunner.extractFrame(source.file(), SEEK_SECONDS, maxWidth,
+                maxHeight, cover);
+        output.save(frame, "jpg");
+
+        if (storyboardEnabled && output.supportsSidecars()) {
+            try {
+                generateStoryboard(source, output);
+            } catch (IOException e) {
+                // The regular thumbnail is already written; a missing storyboard is not fatal
+                logger.warn("Failed to generate storyboard for {}", source.name(), e);
+            }
+        }
+    }
+
+    // Sprite sheet of evenly spaced frames plus a WebVTT index, for scrubbing previews
+    private void generateStoryboard(ThumbnailSource source, ThumbnailOutput output)
+            throws IOException {
+        double duration = ffmpegRunner.probeDuration(source.file());
+        BufferedImage sprite = ffmpegRunner.extractStoryboard(source.file(), duration,
+                storyboardFrames, storyboardColumns, storyboardTileWidth);
+
+        Path spritePath = output.sidecarPath(STORYBOARD_SUFFIX, "jpg");
+        output.writeImage(sprite, spritePath, "jpg");
+
+        int rows = (storyboardFrames + storyboardColumns - 1) / storyboardColumns;
+        int tileWidth = sprite.getWidth() / storyboardColumns;
+        int tileHeight = sprite.getHeight() / rows;
+        double interval = duration / storyboardFrames;
+        StringBuilder vtt = new StringBuilder("WEBVTT\n");
+        for (int i = 0; i < storyboardFrames; i++) {
+            vtt.append('\n').append(formatVttTime(i * interval)).append(" --> ")
+                    .append(formatVttTime(Math.min(duration, (i + 1) * interval))).append('\n')
+                    .append(spritePath.getFileName()).append("#xywh=")
+                    .append((i % storyboardColumns) * tileWidth).append(',')
+                    .append((i / storyboardColumns) * tileHeight).append(',').append(tileWidth)
+                    .append(',').append(tileHeight).append('\n');
+        }
+        output.writeText(vtt, output.sidecarPath(STORYBOARD_SUFFIX, "vtt"));
+    }
+
+    private static String formatVttTime(double seconds) {
+        long millis = Math.round(seconds * 1000);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d", millis / 3_600_000,
+                (millis / 60_000) % 60, (millis / 1000) % 60, millis % 1000);
+    }
+}
@@ -0,0 +1,70 @@
+package com.techpool.tech;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Word documents: DOCX is rendered from its first page, legacy DOC is previewed from its text.
+ */
+@Component
+public class WordThumbnailHandler implements ThumbnailHandler {
+    private static final String DOC = "application/msword";
+    private static final String DOCX =
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+    // Documents are parsed whole: zipped XML expands several times over once it is a DOM
+    private static final int DOCX_EXPANSION = 10;
+    private static final int DOC_EXPANSION = 3;
+
+    @Autowired
+    private DocxPreviewEngine docxPreviewEngine;
+
+    @Override
+    public boolean supports(String contentType) {
+        return contentType.equals(DOC) || contentType.equals(DOCX);
+    }
+
+    @Override
+    public ThumbnailExecutionEngine.WorkerPool workerPool() {
+        return ThumbnailExecutionEngine.WorkerPool.DOCUMENT;
+    }
+
+    @Override
+    public AdmissionController.Estimate estimateMemory(ThumbnailSource source,
+            List<ThumbnailRendition> renditions) throws IOException {
+        if (!source.contentType().equals(DOCX)) {
+            return AdmissionController.Estimate.fixed(source.size() * DOC_EXPANSION);
+        }
+        // Plus the intermediate PDF and the rendered page, at about twice the largest rendition
+        long pixels = 1;
+        for (ThumbnailRendition rendition : renditions) {
+            pixels = Math.max(pixels, (long) rendition.width() * rendition.height());
+        }
+        return AdmissionController.Estimate.fixed(source.size() * DOCX_EXPANSION + 8 * pixels);
+    }
+
+    @Override
+    public void generate(ThumbnailSource source, ThumbnailOutput output) throws IOException {
+        if (source.contentType().equals(DOCX)) {
+            // The engine parses once and hands back the text when it cannot render
+            DocxPreviewEngine.Preview preview =
+                    docxPreviewEngine.render(source, output.renditions(), output.memoryLimit());
+            if (preview.image() != null) {
+                output.save(preview.image(), "jpg");
+            } else {
+                output.saveTextPreview(preview.text());
+            }
+            return;
+        }
+        // A file is read through the shared channel, which stays open after the document closes
+        POIFSFileSystem fs = source.channel() != null
+                ? new POIFSFileSystem(source.channel(), true, false)
+                : new POIFSFileSystem(source.openStream());
+        try (HWPFDocument doc = new HWPFDocument(fs)) {
+            output.saveDocumentPreview("DOC Preview", doc.getDocumentText());
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.techpool.tech.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs ffmpeg under a process budget and a per-call deadline. Frames are seeked on the input
+ * side, scaled inside ffmpeg and streamed back over stdout, so nothing touches disk and a hung
+ * process is killed instead of holding a worker forever.
+ */
+@Component
+public class FFmpegRunner {
+    private static final Logger logger = LoggerFactory.getLogger(FFmpegRunner.class);
+
+    // How much of a process's stderr is kept for the error message
+    private static final int STDERR_TAIL_BYTES = 4096;
+
+    @Value("${thumbnail.ffmpeg.path:ffmpeg}")
+    private String ffmpegPath;
+
+    @Value("${thumbnail.ffmpeg.ffprobe-path:ffprobe}")
+    private String ffprobePath;
+
+    @Value("${thumbnail.ffmpeg.timeout-seconds:30}")
+    private long timeoutSeconds;
+
+    @Value("${thumbnail.ffmpeg.max-processes:4}")
+    private int maxProcesses;
+
+    private Semaphore processBudget;
+    private final AtomicInteger activeProcesses = new AtomicInteger();
+    private final ScheduledExecutorService watchdog =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ffmpeg-watchdog");
+                t.setDaemon(true);
+                return t;
+            });
+    // One per running process at most, so bounded by the process budget
+    private final ExecutorService stderrReaders = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ffmpeg-stderr");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        processBudget = new Semaphore(maxProcesses);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        stderrReaders.shutdownNow();
+    }
+
+    public int getActiveProcesses() {
+        return activeProcesses.get();
+    }
+
+    /**
+     * Extracts a single frame near {@code seekSeconds}, scaled to fit within (or, with
+     * {@code cover}, to cover) the given box. Falls back to the first frame for clips shorter
+     * than the seek position.
+     */
+    public BufferedImage extractFrame(File video, double seekSeconds, int maxWidth, int maxHeight,
+            boolean cover) throws IOException {
+        BufferedImage frame = readFrame(video, seekSeconds, maxWidth, maxHeight, cover);
+        if (frame == null && seekSeconds > 0) {
+            frame = readFrame(video, 0, maxWidth, maxHeight, cover);
+        }
+        if (frame == null) {
+            throw new IOException("FFmpeg produced no frame for " + video.getName());
+        }
+        return frame;
+    }
+
+    private BufferedImage readFrame(File video, double seekSeconds, int maxWidth, int maxHeight,
+            boolean cover) throws IOException {
+        List<String> command = new ArrayList<>(baseCommand());
+        // -ss before -i seeks the demuxer straight to the nearest keyframe
+        command.addAll(List.of("-noaccurate_seek", "-ss", formatSeconds(seekSeconds), "-i",
+                video.getAbsolutePath(), "-frames:v", "1", "-vf",
+                scaleFilter(maxWidth, maxHeight, cover), "-f", "image2pipe", "-vcodec", "bmp",
+                "-"));
+        byte[] output = run(command);
+        if (output.length == 0) {
+            return null;
+        }
+        BufferedImage frame = ImageIO.read(new ByteArrayInputStream(output));
+        if (frame == null) {
+            throw new IOException("Unreadable frame from FFmpeg for " + video.getName());
+        }
+        return frame;
+    }
+
+    /**
+     * Tiles {@code frames} evenly spaced frames into a single sprite, {@code columns} wide, in one
+     * ffmpeg invocation. Only keyframes are decoded, so the file is read once and cheaply.
+     */
+    public BufferedImage extractStoryboard(File video, double durationSeconds, int frames,
+            int columns, int tileWidth) throws IOException {
+        int rows = (frames + columns - 1) / columns;
+        String filter = "fps=" + frames + "/" + formatSeconds(durationSeconds) + ",scale="
+                + tileWidth + ":-2,tile=" + columns + "x" + rows;
+        List<String> command = new ArrayList<>(baseCommand());
+        command.addAll(List.of("-skip_frame", "nokey", "-i", video.getAbsolutePath(), "-vf",
+                filter, "-frames:v", "1", "-f", "image2pipe", "-vcodec", "bmp", "-"));
+        byte[] output = run(command);
+        BufferedImage sprite = output.length == 0 ? null
+                : ImageIO.read(new ByteArrayInputStream(output));
+        if (sprite == null) {
+            throw new IOException("FFmpeg produced no storyboard for " + video.getName());
+        }
+        return sprite;
+    }
+
+    /**
+     * Container duration in seconds, as reported by ffprobe.
+     */
+    public double probeDuration(File video) throws IOException {
+        byte[] output = run(List.of(ffprobePath, "-v", "error", "-show_entries",
+                "format=duration", "-of", "default=noprint_wrappers=1:nokey=1",
+                video.getAbsolutePath()));
+        String text = new String(output, StandardCharsets.US_ASCII).trim();
+        try {
+            double duration = Double.parseDouble(text);
+            if (duration > 0) {
+                return duration;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IOException("Unknown duration for " + video.getName() + ": " + text);
+    }
+
+    List<String> baseCommand() {
+        return List.of(ffmpegPath, "-hide_banner", "-nostdin", "-loglevel", "error");
+    }
+
+    // Scale inside ffmpeg, never upscaling
+    static String scaleFilter(int maxWidth, int maxHeight, boolean cover) {
+        return "scale=w='min(iw," + maxWidth + ")':h='min(ih," + maxHeight + ")'"
+                + ":force_original_aspect_ratio=" + (cover ? "increase" : "decrease");
+    }
+
+    static String formatSeconds(double seconds) {
+        return String.format(Locale.ROOT, "%.3f", seconds);
+    }
+
+    /**
+     * Runs ffmpeg (or ffprobe) and returns everything it wrote to stdout, enforcing the process budget and the
+     * deadline.
+     */
+    byte[] run(List<String> command) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            if (!processBudget.tryAcquire(timeoutSeconds, TimeUnit.SECONDS)) {
+                throw new IOException("Timed out waiting for a free ffmpeg process slot");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for an ffmpeg process slot", e);
+        }
+        activeProcesses.incrementAndGet();
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            Process process = pb.start();
+            process.getOutputStream().close();
+            // Only the end is kept, for the error message; inherited, it flooded the service logs
+            StderrTail stderr = new StderrTail(process.getErrorStream());
+            Future<?> stderrDrained = stderrReaders.submit(stderr);
+
+            AtomicBoolean killed = new AtomicBoolean();
+            long remaining = Math.max(1, deadline - System.nanoTime());
+            ScheduledFuture<?> kill = watchdog.schedule(() -> {
+                if (process.isAlive()) {
+                    killed.set(true);
+                    // Children (e.g. a wrapper script's ffmpeg) would keep stdout open
+                    process.descendants().forEach(ProcessHandle::destroyForcibly);
+                    process.destroyForcibly();
+                }
+            }, remaining, TimeUnit.NANOSECONDS);
+            try (InputStream stdout = process.getInputStream()) {
+                byte[] output = stdout.readAllBytes();
+                int exitCode = process.waitFor();
+                if (killed.get()) {
+                    throw new IOException("FFmpeg timed out after " + timeoutSeconds + "s"
+                            + stderr.describe(stderrDrained));
+                }
+                if (exitCode != 0) {
+                    throw new IOException("FFmpeg failed with exit code " + exitCode
+                            + stderr.describe(stderrDrained));
+                }
+                return output;
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("FFmpeg was interrupted", e);
+            } catch (IOException e) {
+                process.destroyForcibly();
+                throw e;
+            } finally {
+                kill.cancel(false);
+            }
+        } finally {
+            activeProcesses.decrementAndGet();
+            processBudget.release();
+            logger.debug("FFmpeg finished: {}", command);
+        }
+    }
+
+    // Drains a process's stderr, keeping its last STDERR_TAIL_BYTES
+    private static final class StderrTail implements Runnable {
+        private final InputStream in;
+        private final byte[] tail = new byte[STDERR_TAIL_BYTES];
+        private int length;
+        private boolean truncated;
+
+        StderrTail(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[1024];
+            try (in) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    append(buffer, n);
+                }
+            } catch (IOException e) {
+                // The process was killed or the stream closed; keep what was read
+            }
+        }
+
+        private synchronized void append(byte[] buffer, int n) {
+            int keep = Math.min(n, tail.length);
+            int drop = Math.max(0, length + keep - tail.length);
+            if (drop > 0) {
+                System.arraycopy(tail, drop, tail, 0, length - drop);
+                length -= drop;
+                truncated = true;
+            }
+            System.arraycopy(buffer, n - keep, tail, length, keep);
+            length += keep;
+            truncated |= keep < n;
+        }
+
+        // ": <stderr>" once the process has closed it, or briefly after, or "" when it was silent
+        String describe(Future<?> drained) {
+            try {
+                drained.get(1, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // Use what has been read so far
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String text;
+            synchronized (this) {
+                text = new String(tail, 0, length, StandardCharsets.UTF_8).strip();
+            }
+            if (text.isEmpty()) {
+                return "";
+            }
+            return ": " + (truncated ? "..." : "") + text;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class ContentTypeDetectorTest {
+
+    private final ContentTypeDetector detector = new ContentTypeDetector();
+
+    @ParameterizedTest
+    @CsvSource({
+            "FFD8FFE000104A464946, photo.bin, image/jpeg",
+            "89504E470D0A1A0A0000, a.png, image/png",
+            "474946383961, a.gif, image/gif",
+            "49492A00, scan.tif, image/tiff",
+            "4D4D002A, scan.tif, image/tiff",
+            "255044462D312E37, doc.pdf, application/pdf",
+            "524946460000000057454250, a.webp, image/webp",
+            "5249464600000000415649204C495354, clip.avi, video/x-msvideo",
+            "1A45DFA3, clip.webm, video/webm",
+            "1A45DFA3, clip.mkv, video/x-matroska",
+            "504B0304, report.docx, application/vnd.openxmlformats-officedocument"
+                    + ".wordprocessingml.document",
+            "504B0304, sheet.xlsx, application/vnd.openxmlformats-officedocument"
+                    + ".spreadsheetml.sheet",
+            "D0CF11E0A1B11AE1, old.doc, application/msword",
+            "D0CF11E0A1B11AE1, old.xls, application/vnd.ms-excel",
+            "424D, a.bmp, image/bmp",
+    })
+    void detectsMagicNumbers(String hex, String name, String expected) {
+        assertThat(detector.detect(ByteBuffer.wrap(hexBytes(hex)), name)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "isom, 'isom,iso2,avc1,mp41', video/mp4",
+            "mp42, 'mp42,isom', video/mp4",
+            "'qt  ', 'qt  ', video/quicktime",
+            "heic, 'mif1,heic', image/heic",
+            "mif1, 'mif1,heic', image/heic",
+            "mif1, 'mif1,miaf', image/heif",
+            "avif, 'avif,mif1,miaf', image/avif",
+            "mif1, 'mif1,avif', image/avif",
+            "'M4A ', 'M4A ,mp42,isom', audio/mp4",
+            "3gp5, '3gp5,isom', video/3gpp",
+    })
+    void tellsIsoMediaApartByBrand(String major, String compatible, String expected) {
+        assertThat(detector.detect(ByteBuffer.wrap(ftyp(major, compatible.split(","))),
+                "file.bin")).isEqualTo(expected);
+    }
+
+    private static byte[] ftyp(String major, String... compatible) {
+        ByteArrayOutputStream box = new ByteArrayOutputStream();
+        int size = 16 + 4 * compatible.length;
+        box.writeBytes(ByteBuffer.allocate(4).putInt(size).array());
+        box.writeBytes("ftyp".getBytes(StandardCharsets.US_ASCII));
+        box.writeBytes(major.getBytes(StandardCharsets.US_ASCII));
+        box.writeBytes(new byte[4]);
+        for (String brand : compatible) {
+            box.writeBytes(brand.getBytes(StandardCharsets.US_ASCII));
+        }
+        // Start of the next box, so the brand list must stop at the ftyp box's size
+        box.writeBytes(new byte[] {0, 0, 0, 8, 'a', 'v', 'i', 'f'});
+        return box.toByteArray();
+    }
+
+    private static byte[] hexBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,91 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class HandlerDeadlinesTest {
+
+    private final HandlerDeadlines deadlines = new HandlerDeadlines();
+    private final ThumbnailHandler handler = mock(ThumbnailHandler.class);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(deadlines, "defaultSeconds", 1L);
+        ReflectionTestUtils.setField(deadlines, "handlerSpec", "");
+        ReflectionTestUtils.setField(deadlines, "maxRunners", 1);
+        deadlines.init();
+        when(handler.key()).thenReturn("test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        deadlines.shutdown();
+    }
+
+    @Test
+    void abandonedHandlerKeepsItsRunnerAndResourcesUntilItReturns() throws Exception {
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicBoolean released = new AtomicBoolean();
+        AtomicBoolean expired = new AtomicBoolean();
+        assertThatThrownBy(() -> deadlines.run(handler, "stuck",
+                () -> awaitUninterruptibly(unblock), () -> expired.set(true),
+                () -> released.set(true)))
+                .isInstanceOf(HandlerDeadlines.DeadlineExceededException.class);
+        assertThat(expired).isTrue();
+        assertThat(released).isFalse();
+        assertThat(deadlines.getAbandonedCount()).isEqualTo(1);
+
+        // The only runner is taken, so the next handler waits for it
+        Thread next = new Thread(() -> {
+            try {
+                deadlines.run(handler, "next", () -> { }, () -> { }, () -> { });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        next.start();
+        next.join(300);
+        assertThat(next.isAlive()).isTrue();
+
+        unblock.countDown();
+        next.join(5000);
+        assertThat(next.isAlive()).isFalse();
+        assertThat(released).isTrue();
+        assertThat(deadlines.getAbandonedCount()).isZero();
+    }
+
+    @Test
+    void handlerErrorsReachTheCaller() {
+        assertThatThrownBy(() -> deadlines.run(handler, "broken", () -> {
+            throw new IOException("corrupt");
+        }, () -> { }, () -> { })).hasMessage("corrupt");
+    }
+
+    // A decoder that ignores interrupts
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (latch.await(10, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
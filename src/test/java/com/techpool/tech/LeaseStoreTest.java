@@ -0,0 +1,122 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class LeaseStoreTest {
+
+    private static final long LONG_TTL = 60_000;
+
+    @TempDir
+    static Path dir;
+
+    static Stream<LeaseStore> stores() throws IOException {
+        return Stream.of(new InMemoryLeaseStore(),
+                new DirectoryLeaseStore(Files.createTempDirectory(dir, "leases")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void heldLeaseIsNotTakenByAnotherOwner(LeaseStore store) throws IOException {
+        assertThat(store.tryAcquire("unit", "a", LONG_TTL)).isTrue();
+
+        assertThat(store.tryAcquire("unit", "b", LONG_TTL)).isFalse();
+        assertThat(store.renew("unit", "b", LONG_TTL)).isFalse();
+        assertThat(store.renew("unit", "a", LONG_TTL)).isTrue();
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void expiredLeaseIsTakenOverAndTheOldOwnerCannotUndoIt(LeaseStore store) throws Exception {
+        assertThat(store.tryAcquire("unit", "a", 1)).isTrue();
+        Thread.sleep(20);
+
+        assertThat(store.tryAcquire("unit", "b", LONG_TTL)).isTrue();
+
+        assertThat(store.renew("unit", "a", LONG_TTL)).isFalse();
+        store.release("unit", "a");
+        assertThat(store.tryAcquire("unit", "a", LONG_TTL)).isFalse();
+        assertThat(store.renew("unit", "b", LONG_TTL)).isTrue();
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void renewalKeepsALeaseFromExpiring(LeaseStore store) throws Exception {
+        assertThat(store.tryAcquire("unit", "a", 1)).isTrue();
+        assertThat(store.renew("unit", "a", LONG_TTL)).isTrue();
+        Thread.sleep(20);
+
+        assertThat(store.tryAcquire("unit", "b", LONG_TTL)).isFalse();
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void releasedLeaseIsFree(LeaseStore store) throws IOException {
+        assertThat(store.tryAcquire("unit", "a", LONG_TTL)).isTrue();
+        store.release("unit", "a");
+
+        assertThat(store.renew("unit", "a", LONG_TTL)).isFalse();
+        assertThat(store.tryAcquire("unit", "b", LONG_TTL)).isTrue();
+    }
+
+    @Test
+    void renewalNeverLetsALiveLeaseBeTaken() throws Exception {
+        DirectoryLeaseStore store = new DirectoryLeaseStore(Files.createTempDirectory(dir, "race"));
+        assertThat(store.tryAcquire("unit", "a", LONG_TTL)).isTrue();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger stolen = new AtomicInteger();
+        ExecutorService contenders = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                String owner = "b" + i;
+                contenders.submit(() -> {
+                    while (!done.get()) {
+                        if (store.tryAcquire("unit", owner, LONG_TTL)) {
+                            stolen.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (int i = 0; i < 500; i++) {
+                assertThat(store.renew("unit", "a", LONG_TTL)).isTrue();
+            }
+        } finally {
+            done.set(true);
+            contenders.shutdown();
+            assertThat(contenders.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(stolen).hasValue(0);
+    }
+
+    @Test
+    void tornLeaseFileCountsAsExpired() throws IOException {
+        Path leases = Files.createTempDirectory(dir, "torn");
+        DirectoryLeaseStore store = new DirectoryLeaseStore(leases);
+        assertThat(store.tryAcquire("unit", "a", LONG_TTL)).isTrue();
+        try (Stream<Path> files = Files.list(leases)) {
+            for (Path file : files.toList()) {
+                Files.writeString(file, "a\n");
+            }
+        }
+
+        assertThat(store.tryAcquire("unit", "b", LONG_TTL)).isTrue();
+        try (Stream<Path> files = Files.list(leases)) {
+            assertThat(files).hasSize(1);
+        }
+    }
+}
@@ -1,13 +1,43 @@
 package com.techpool.tech;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.imageio.ImageIO;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
 
-@SpringBootTest
+// Manifest, quarantine and pack store stay under target/, away from the user's real ones
+@SpringBootTest(properties = { "thumbnail.manifest.path=target/context-test/manifest.log",
+		"thumbnail.quarantine.path=target/context-test/quarantine.log",
+		"thumbnail.pack.directory=target/context-test/pack" })
+@AutoConfigureMockMvc
 class TechApplicationTests {
 
+	@Autowired
+	private MockMvc mockMvc;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void defaultConfigurationServesThumbnails() throws Exception {
+		Path source = Paths.get("target/context-test/source.png");
+		Files.createDirectories(source.getParent());
+		ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", source.toFile());
+
+		mockMvc.perform(get("/api/thumbnail").param("path", source.toAbsolutePath().toString()))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith("image/*"));
+	}
+
 }
@@ -0,0 +1,137 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+// Manifest, quarantine and pack store stay under target/, away from the user's real ones
+@SpringBootTest(properties = { "thumbnail.allowed-base-path=target/controller-test/allowed",
+        "thumbnail.manifest.path=target/controller-test/state/manifest.log",
+        "thumbnail.quarantine.path=target/controller-test/state/quarantine.log",
+        "thumbnail.pack.directory=target/controller-test/state/pack",
+        "thumbnail.upload.memory-threshold-kb=1" })
+@AutoConfigureMockMvc
+class ThumbnailControllerTest {
+
+    private static final Path ALLOWED = Paths.get("target/controller-test/allowed");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeAll
+    static void createSources() throws Exception {
+        // Runs before the context opens them, so every run starts without recorded state
+        FileSystemUtils.deleteRecursively(ALLOWED.resolveSibling("state"));
+        Files.createDirectories(ALLOWED);
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png",
+                ALLOWED.resolve("a+b %20.png").toFile());
+        Files.createDirectories(ALLOWED.resolveSibling("outside"));
+        Files.writeString(ALLOWED.resolveSibling("outside").resolve("secret.txt"), "secret");
+    }
+
+    @Test
+    void batchRejectsRenditionNameWithPathTraversal() throws Exception {
+        mockMvc.perform(post("/api/thumbnail/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content("{\"path\":\"/tmp/a.png\",\"renditions\":\"../../../tmp/x:10x10\"}\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void batchOnlyAcceptsConfiguredRenditionNames() throws Exception {
+        String path = ALLOWED.resolve("a+b %20.png").toAbsolutePath().toString();
+        for (String renditions : new String[] { "default:10x10", "foo:50x50", "foo" }) {
+            mockMvc.perform(post("/api/thumbnail/batch")
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .content("{\"path\":\"" + path + "\",\"renditions\":\"" + renditions
+                            + "\"}\n"))
+                    .andExpect(status().isBadRequest());
+        }
+        try (Stream<Path> files = Files.list(ALLOWED)) {
+            assertThat(files.map(Path::getFileName).map(Path::toString))
+                    .noneMatch(name -> name.contains("_foo"));
+        }
+    }
+
+    @Test
+    void rendersUploadsHeldInMemoryAndOnDisk() throws Exception {
+        BufferedImage noise = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for (int y = 0; y < noise.getHeight(); y++) {
+            for (int x = 0; x < noise.getWidth(); x++) {
+                noise.setRGB(x, y, random.nextInt());
+            }
+        }
+        for (BufferedImage image : new BufferedImage[] { new BufferedImage(8, 8,
+                BufferedImage.TYPE_INT_RGB), noise }) {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", png);
+            mockMvc.perform(multipart("/api/thumbnail/render")
+                    .file(new MockMultipartFile("file", "upload.png", "image/png",
+                            png.toByteArray())))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith("image/*"));
+        }
+    }
+
+    @Test
+    void rejectsPathsOutsideTheAllowedRoots() throws Exception {
+        String outside = ALLOWED.resolveSibling("outside").resolve("secret.txt")
+                .toAbsolutePath().toString();
+        mockMvc.perform(get("/api/thumbnail").param("path", outside))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/thumbnail").param("path",
+                ALLOWED.toAbsolutePath() + "/../outside/secret.txt"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/thumbnail/generate").param("path", outside))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void rejectsJobsForPathsThatDoNotExist() throws Exception {
+        mockMvc.perform(post("/api/thumbnail/generate")
+                .param("path", ALLOWED.resolve("missing").toAbsolutePath().toString()))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void servesFileNamesWithPlusAndPercent() throws Exception {
+        String path = ALLOWED.resolve("a+b %20.png").toAbsolutePath().toString();
+        mockMvc.perform(get("/api/thumbnail").param("path", path))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("image/*"));
+    }
+
+    @Test
+    void rendersAdHocSizesWithoutStoringThem() throws Exception {
+        String path = ALLOWED.resolve("a+b %20.png").toAbsolutePath().toString();
+        mockMvc.perform(get("/api/thumbnail").param("path", path).param("w", "17")
+                .param("h", "13"))
+                .andExpect(status().isOk());
+        try (Stream<Path> files = Files.list(ALLOWED)) {
+            assertThat(files.map(Path::getFileName)
+                    .map(Path::toString)).noneMatch(name -> name.contains("17x13"));
+        }
+    }
+}
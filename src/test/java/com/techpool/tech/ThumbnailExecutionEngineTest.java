@@ -0,0 +1,98 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+class ThumbnailExecutionEngineTest {
+
+    private static final ThumbnailExecutionEngine.WorkerPool IMAGE =
+            ThumbnailExecutionEngine.WorkerPool.IMAGE;
+
+    private ThumbnailExecutionEngine engine;
+    private final List<String> ran = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void interactiveTasksRunAheadOfQueuedBulkTasks() throws Exception {
+        engine = engine(2, 2);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(1);
+        CompletableFuture<String> blocker = blocked(ThumbnailExecutionEngine.Lane.BULK, first);
+        blocked(ThumbnailExecutionEngine.Lane.BULK, second);
+        awaitRunning(2);
+
+        CompletableFuture<String> bulk = record(ThumbnailExecutionEngine.Lane.BULK, "bulk");
+        CompletableFuture<String> interactive =
+                record(ThumbnailExecutionEngine.Lane.INTERACTIVE, "interactive");
+        first.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        interactive.get(5, TimeUnit.SECONDS);
+        second.countDown();
+        bulk.get(5, TimeUnit.SECONDS);
+
+        assertThat(ran).containsExactly("interactive", "bulk");
+    }
+
+    @Test
+    void bulkTasksNeverTakeTheThreadsKeptForInteractiveWork() throws Exception {
+        engine = engine(2, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        blocked(ThumbnailExecutionEngine.Lane.BULK, release);
+        awaitRunning(1);
+
+        CompletableFuture<String> bulk = record(ThumbnailExecutionEngine.Lane.BULK, "bulk");
+        Thread.sleep(200);
+        assertThat(bulk).isNotDone();
+        assertThat(engine.getQueueDepth(IMAGE, ThumbnailExecutionEngine.Lane.BULK)).isEqualTo(1);
+
+        // The idle thread still takes interactive work
+        record(ThumbnailExecutionEngine.Lane.INTERACTIVE, "interactive").get(5, TimeUnit.SECONDS);
+        assertThat(bulk).isNotDone();
+
+        release.countDown();
+        bulk.get(5, TimeUnit.SECONDS);
+        assertThat(ran).containsExactly("interactive", "bulk");
+    }
+
+    private static ThumbnailExecutionEngine engine(int threads, int bulkThreads) {
+        return new ThumbnailExecutionEngine(new MockEnvironment()
+                .withProperty("thumbnail.executor.image.threads", String.valueOf(threads))
+                .withProperty("thumbnail.executor.image.bulk-threads",
+                        String.valueOf(bulkThreads)));
+    }
+
+    private CompletableFuture<String> blocked(ThumbnailExecutionEngine.Lane lane,
+            CountDownLatch release) {
+        return engine.submit(IMAGE, lane, () -> {
+            release.await();
+            return "blocker";
+        });
+    }
+
+    private CompletableFuture<String> record(ThumbnailExecutionEngine.Lane lane, String name) {
+        return engine.submit(IMAGE, lane, () -> {
+            ran.add(name);
+            return name;
+        });
+    }
+
+    private void awaitRunning(int tasks) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (engine.getActiveCount(IMAGE) < tasks && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(engine.getActiveCount(IMAGE)).isEqualTo(tasks);
+    }
+}
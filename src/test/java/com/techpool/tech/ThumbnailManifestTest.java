@@ -0,0 +1,77 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ThumbnailManifestTest {
+
+    @TempDir
+    Path dir;
+
+    private ThumbnailManifest manifest;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        manifest.close();
+    }
+
+    @Test
+    void corruptRecordIsCutOffAndTheLogKeepsGoing() throws IOException {
+        File a = source("a.jpg");
+        File b = source("b.jpg");
+        manifest = open();
+        manifest.record(a, "400x600");
+        manifest.close();
+        long good = Files.size(log());
+        Files.write(log(), new byte[] {7, 0, 1, 'x'}, StandardOpenOption.APPEND);
+
+        manifest = open();
+
+        assertThat(Files.size(log())).isEqualTo(good);
+        assertThat(manifest.isUpToDate(a, "400x600")).isTrue();
+        manifest.record(b, "400x600");
+        manifest.close();
+        manifest = open();
+        assertThat(manifest.isUpToDate(b, "400x600")).isTrue();
+    }
+
+    @Test
+    void entriesShareOneCopyOfTheirOutputSpec() throws IOException {
+        File a = source("a.jpg");
+        File b = source("b.jpg");
+        manifest = open();
+        manifest.record(a, new String("400x600"));
+        manifest.record(b, new String("400x600"));
+        manifest.close();
+
+        manifest = open();
+
+        assertThat(manifest.get(a).outputSpec()).isSameAs(manifest.get(b).outputSpec());
+    }
+
+    private ThumbnailManifest open() throws IOException {
+        ThumbnailManifest opened = new ThumbnailManifest();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "manifestPath", log().toString());
+        ReflectionTestUtils.setField(opened, "contentHash", false);
+        opened.open();
+        return opened;
+    }
+
+    private Path log() {
+        return dir.resolve("manifest.log");
+    }
+
+    private File source(String name) throws IOException {
+        return Files.writeString(dir.resolve(name), name).toFile();
+    }
+}
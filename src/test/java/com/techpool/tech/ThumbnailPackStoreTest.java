@@ -0,0 +1,139 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ThumbnailPackStoreTest {
+
+    private static final ThumbnailRendition SMALL = ThumbnailRendition.of("small", 100, 100);
+
+    @TempDir
+    Path dir;
+
+    private ThumbnailPackStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void identicalContentIsStoredOnce() throws IOException {
+        File a = source("a.jpg", "same");
+        File b = source("b.jpg", "same");
+        store.put(a, "h1", thumbnail("thumbnail of h1"));
+        long stored = store.getTotalBytes();
+
+        assertThat(store.containsAll("h1", List.of(SMALL))).isTrue();
+        store.link(b, "h1");
+
+        assertThat(store.getTotalBytes() - stored).isLessThan(stored);
+        assertThat(read(store.find(b, SMALL))).isEqualTo("thumbnail of h1");
+        assertThat(store.isUpToDate(b, List.of(SMALL))).isTrue();
+    }
+
+    @Test
+    void compactionDropsThumbnailsNothingRefersTo() throws IOException {
+        File a = source("a.jpg", "first");
+        store.put(a, "h1", thumbnail("thumbnail of h1"));
+        Files.writeString(a.toPath(), "second version");
+        store.put(a, "h2", thumbnail("thumbnail of h2"));
+        long before = store.getTotalBytes();
+        assertThat(store.getGarbageBytes()).isPositive();
+
+        store.compact();
+
+        assertThat(store.getGarbageBytes()).isZero();
+        assertThat(store.getTotalBytes()).isLessThan(before);
+        assertThat(store.containsAll("h1", List.of(SMALL))).isFalse();
+        assertThat(read(store.find(a, SMALL))).isEqualTo("thumbnail of h2");
+    }
+
+    @Test
+    void reopenReplaysWritesMadeAfterCompactionLast() throws IOException {
+        File a = source("a.jpg", "a");
+        File b = source("b.jpg", "bb");
+        File c = source("c.jpg", "a");
+        store.put(a, "h1", thumbnail("thumbnail of h1"));
+        store.put(b, "h2", thumbnail("thumbnail of h2"));
+        store.remove(b);
+        store.compact();
+        store.link(c, "h1");
+        store.remove(a);
+        store.close();
+
+        store = open();
+
+        assertThat(store.sourcePaths()).containsExactly(c.getAbsolutePath());
+        assertThat(store.find(a, SMALL)).isNull();
+        assertThat(read(store.find(c, SMALL))).isEqualTo("thumbnail of h1");
+        assertThat(store.getGarbageBytes()).isPositive();
+    }
+
+    @Test
+    void reopenDropsATornRecord() throws IOException {
+        File a = source("a.jpg", "a");
+        store.put(a, "h1", thumbnail("thumbnail of h1"));
+        long stored = store.getTotalBytes();
+        store.close();
+        try (Stream<Path> segments = Files.list(dir.resolve("pack"))) {
+            Path last = segments.sorted().reduce((first, second) -> second).orElseThrow();
+            Files.write(last, new byte[] {1, 0, 9, 'h'}, StandardOpenOption.APPEND);
+        }
+
+        store = open();
+
+        assertThat(store.getTotalBytes()).isEqualTo(stored);
+        assertThat(read(store.find(a, SMALL))).isEqualTo("thumbnail of h1");
+        File b = source("b.jpg", "bb");
+        store.put(b, "h2", thumbnail("thumbnail of h2"));
+        assertThat(read(store.find(b, SMALL))).isEqualTo("thumbnail of h2");
+    }
+
+    private ThumbnailPackStore open() throws IOException {
+        ThumbnailPackStore opened = new ThumbnailPackStore();
+        ReflectionTestUtils.setField(opened, "store", "pack");
+        ReflectionTestUtils.setField(opened, "directory", dir.resolve("pack").toString());
+        ReflectionTestUtils.setField(opened, "segmentSizeMb", 1L);
+        ReflectionTestUtils.setField(opened, "compactGarbageRatio", 0.5);
+        opened.open();
+        return opened;
+    }
+
+    private File source(String name, String content) throws IOException {
+        return Files.writeString(dir.resolve(name), content).toFile();
+    }
+
+    private static Map<ThumbnailRendition, ThumbnailService.EncodedThumbnail> thumbnail(
+            String data) {
+        return Map.of(SMALL, new ThumbnailService.EncodedThumbnail(
+                data.getBytes(StandardCharsets.UTF_8), "jpg"));
+    }
+
+    private static String read(ThumbnailPackStore.Thumbnail thumbnail) {
+        ByteBuffer data = thumbnail.data();
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ThumbnailQuarantineTest {
+
+    @TempDir
+    Path dir;
+
+    private ThumbnailQuarantine quarantine;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        quarantine.close();
+    }
+
+    @Test
+    void corruptRecordIsCutOffAndTheLogKeepsGoing() throws IOException {
+        File a = source("a.jpg");
+        File b = source("b.jpg");
+        quarantine = open();
+        quarantine.recordFailure(a, new IOException("Not a JPEG file"));
+        quarantine.recordFailure(a, new IOException("Not a JPEG file"));
+        quarantine.close();
+        long good = Files.size(log());
+        Files.write(log(), new byte[] {9, 0, 1, 'x'}, StandardOpenOption.APPEND);
+
+        quarantine = open();
+
+        assertThat(Files.size(log())).isEqualTo(good);
+        assertThat(quarantine.isQuarantined(a)).isTrue();
+        quarantine.recordFailure(b, new IOException("Not a JPEG file"));
+        quarantine.close();
+        quarantine = open();
+        assertThat(quarantine.isPendingRetry(b)).isTrue();
+    }
+
+    @Test
+    void tornRecordIsCutOff() throws IOException {
+        File a = source("a.jpg");
+        quarantine = open();
+        quarantine.recordFailure(a, new IOException("Not a JPEG file"));
+        quarantine.close();
+        long good = Files.size(log());
+        // A put record that ends inside its path
+        Files.write(log(), new byte[] {1, 0, 20, '/', 't'}, StandardOpenOption.APPEND);
+
+        quarantine = open();
+
+        assertThat(Files.size(log())).isEqualTo(good);
+        assertThat(quarantine.isPendingRetry(a)).isTrue();
+    }
+
+    private ThumbnailQuarantine open() throws IOException {
+        ThumbnailQuarantine opened = new ThumbnailQuarantine();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "quarantinePath", log().toString());
+        ReflectionTestUtils.setField(opened, "afterFailures", 2);
+        opened.open();
+        return opened;
+    }
+
+    private Path log() {
+        return dir.resolve("quarantine.log");
+    }
+
+    private File source(String name) throws IOException {
+        return Files.writeString(dir.resolve(name), name).toFile();
+    }
+}
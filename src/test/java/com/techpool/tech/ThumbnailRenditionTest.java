@@ -0,0 +1,44 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ThumbnailRenditionTest {
+
+    @Test
+    void parsesFullSpec() {
+        ThumbnailRendition rendition = ThumbnailRendition.parse("small:100x150:fill:png");
+        assertThat(rendition.name()).isEqualTo("small");
+        assertThat(rendition.width()).isEqualTo(100);
+        assertThat(rendition.height()).isEqualTo(150);
+        assertThat(rendition.fitMode()).isEqualTo(ThumbnailRendition.FitMode.FILL);
+        assertThat(rendition.format()).isEqualTo("png");
+    }
+
+    @Test
+    void sortsLargestFirst() {
+        List<ThumbnailRendition> renditions =
+                ThumbnailRendition.parseList("small:100x100,large:400x600,medium:200x300");
+        assertThat(renditions).extracting(ThumbnailRendition::name)
+                .containsExactly("large", "medium", "small");
+    }
+
+    @Test
+    void rejectsNamesThatCouldEscapeTheOutputDirectory() {
+        for (String name : List.of("../../../tmp/x", "a/b", "a\\b", "..", "x.png", "")) {
+            assertThatThrownBy(() -> ThumbnailRendition.parse(name + ":10x10"))
+                    .as(name).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void rejectsUnknownFormats() {
+        assertThatThrownBy(() -> ThumbnailRendition.parse("a:10x10:fit:gif/../x"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ThumbnailRendition.parse("a:10x10:fit:webp"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,72 @@
+package com.techpool.tech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.util.stream.Stream;
+import javax.imageio.IIOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ThumbnailRetryPolicyTest {
+
+    static Stream<Throwable> transientErrors() {
+        return Stream.of(new FileSystemException("/mnt/share/a.jpg"),
+                new SocketTimeoutException("Read timed out"),
+                new IOException("Stale file handle"),
+                new IOException("Input/output error"),
+                new IOException("Too many open files"),
+                new IOException("Read failed", new IOException("Connection reset by peer")));
+    }
+
+    static Stream<Throwable> permanentErrors() {
+        return Stream.of(new IIOException("Unsupported Image Type"),
+                new IOException("Not a JPEG file: starts with 0x89 0x50"),
+                new NoSuchFileException("/data/gone.jpg"),
+                new AccessDeniedException("/data/secret.jpg"),
+                new FileNotFoundException("/data/gone.jpg"),
+                new ClosedChannelException(),
+                new IllegalArgumentException("Width (0) and height (0) cannot be <= 0"),
+                new HandlerDeadlines.DeadlineExceededException("a.jpg exceeded the image deadline"),
+                new IOException("FFmpeg timed out after 30s"),
+                new IOException("FFmpeg failed with exit code 1: Input/output error"),
+                new IOException("Decode failed", new NoSuchFileException("/data/a.jpg")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("transientErrors")
+    void transientErrorsAreRetried(Throwable error) {
+        assertThat(ThumbnailRetryPolicy.isTransient(error)).isTrue();
+    }
+
+    @ParameterizedTest
+    @MethodSource("permanentErrors")
+    void permanentErrorsAreNot(Throwable error) {
+        assertThat(ThumbnailRetryPolicy.isTransient(error)).isFalse();
+    }
+
+    @Test
+    void attemptsStopAtTheLimitAndBackoffStaysUnderTheCap() {
+        ThumbnailRetryPolicy policy = new ThumbnailRetryPolicy();
+        ReflectionTestUtils.setField(policy, "maxAttempts", 3);
+        ReflectionTestUtils.setField(policy, "backoffMs", 200L);
+        ReflectionTestUtils.setField(policy, "maxBackoffMs", 1000L);
+        IOException error = new IOException("Stale file handle");
+
+        assertThat(policy.shouldRetry(error, 1)).isTrue();
+        assertThat(policy.shouldRetry(error, 2)).isTrue();
+        assertThat(policy.shouldRetry(error, 3)).isFalse();
+        for (int attempts = 1; attempts < 40; attempts++) {
+            assertThat(policy.backoffMillis(attempts))
+                    .isBetween(0L, Math.min(1000L, 200L << Math.min(attempts - 1, 20)));
+        }
+    }
+}
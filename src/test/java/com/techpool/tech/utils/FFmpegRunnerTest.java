@@ -0,0 +1,46 @@
+package com.techpool.tech.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class FFmpegRunnerTest {
+
+    private final FFmpegRunner runner = new FFmpegRunner();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(runner, "timeoutSeconds", 10L);
+        ReflectionTestUtils.setField(runner, "maxProcesses", 1);
+        runner.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        runner.shutdown();
+    }
+
+    @Test
+    void failureCarriesTheEndOfStderr() {
+        assertThatThrownBy(() -> runner.run(List.of("sh", "-c",
+                "echo 'Invalid data found when processing input' >&2; exit 1")))
+                .isInstanceOf(IOException.class)
+                .hasMessage("FFmpeg failed with exit code 1: "
+                        + "Invalid data found when processing input");
+    }
+
+    @Test
+    void stderrKeptForTheMessageIsBounded() {
+        assertThatThrownBy(() -> runner.run(List.of("sh", "-c",
+                "i=0; while [ $i -lt 2000 ]; do echo \"line $i\" >&2; i=$((i+1)); done; exit 2")))
+                .hasMessageStartingWith("FFmpeg failed with exit code 2: ...")
+                .hasMessageEndingWith("line 1999")
+                .satisfies(e -> assertThat(e.getMessage()).hasSizeLessThan(4200));
+    }
+}